@@ -0,0 +1,91 @@
+package com.aura.ai.agent;
+
+import com.aura.model.dto.ChatRequest;
+import com.aura.model.entity.ChatHistory;
+import com.aura.service.ai.ConversationSummaryService;
+import com.aura.util.MessageConverter;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Conversation Context
+ * 请求级对话上下文
+ *
+ * 每轮对话在 AIAgentService 中构建一次（加载并转换一次对话历史），
+ * 传给 OrchestratorAgent 和各专业Agent，避免每个Agent重复查询和转换历史。
+ * 长会话中已被折叠进滚动摘要的消息不再作为历史消息发送，改为发送摘要。
+ *
+ * @param sessionId       Session ID
+ * @param message         Current user message
+ * @param history         Last {@link #HISTORY_WINDOW} messages (chronological, immutable)
+ * @param historyMessages History not yet covered by the summary, converted to Spring AI messages (immutable)
+ * @param summary         Running summary of earlier turns (may be null)
+ * @param entities        Entities extracted from the current message
+ * @param requestContext  Client-provided context (current page, viewed product, ...), may be null
+ */
+public record ConversationContext(
+        String sessionId,
+        String message,
+        List<ChatHistory> history,
+        List<Message> historyMessages,
+        String summary,
+        Map<String, Object> entities,
+        ChatRequest.ChatContext requestContext) {
+
+    /**
+     * Number of history messages loaded per turn (the largest window any agent uses)
+     */
+    public static final int HISTORY_WINDOW = 10;
+
+    /**
+     * Build the context for a chat turn
+     */
+    public static ConversationContext of(ChatRequest request, List<ChatHistory> history,
+            ConversationSummaryService.Summary summary, Map<String, Object> entities) {
+        List<ChatHistory> recent = summary == null ? history
+                : history.stream().filter(message -> !summary.covers(message)).toList();
+        return new ConversationContext(
+                request.getSessionId(),
+                request.getMessage(),
+                List.copyOf(history),
+                List.copyOf(MessageConverter.convertToMessages(recent)),
+                summary != null ? summary.text() : null,
+                entities,
+                request.getContext());
+    }
+
+    /**
+     * Whether the session has turns before the current message (history other than the
+     * current message itself, or a summary of earlier turns)
+     */
+    public boolean hasPriorTurns() {
+        if (summary != null) {
+            return true;
+        }
+        if (history.isEmpty()) {
+            return false;
+        }
+        // The history is loaded after the current message is saved, so it normally ends with it
+        ChatHistory last = history.get(history.size() - 1);
+        boolean lastIsCurrent = "user".equals(last.getRole()) && Objects.equals(last.getMessage(), message);
+        return history.size() > (lastIsCurrent ? 1 : 0);
+    }
+
+    /**
+     * Summary (if any) followed by the last {@code limit} history messages,
+     * as a new mutable list (for adding system/user messages)
+     */
+    public List<Message> messages(int limit) {
+        List<Message> messages = new ArrayList<>(limit + 1);
+        if (summary != null) {
+            messages.add(new SystemMessage("Summary of the earlier conversation:\n" + summary));
+        }
+        messages.addAll(historyMessages.subList(Math.max(0, historyMessages.size() - limit), historyMessages.size()));
+        return messages;
+    }
+}
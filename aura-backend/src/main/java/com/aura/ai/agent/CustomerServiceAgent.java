@@ -1,18 +1,21 @@
 package com.aura.ai.agent;
 
-import com.aura.model.entity.ChatHistory;
+import com.aura.config.AgentProperties;
 import com.aura.model.entity.Order;
 import com.aura.service.OrderService;
-import com.aura.service.ai.MemoryService;
-import com.aura.util.MessageConverter;
+import com.aura.service.ai.AgentChatService;
+import com.aura.service.ai.PromptBudgetService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Customer Service Agent
@@ -29,9 +32,11 @@ import java.util.List;
 @Slf4j
 public class CustomerServiceAgent {
 
+    @Qualifier("customerServiceChatClient")
     private final ChatClient chatClient;
     private final OrderService orderService;
-    private final MemoryService memoryService;
+    private final AgentChatService agentChatService;
+    private final PromptBudgetService promptBudgetService;
 
     /**
      * System prompt for customer service
@@ -116,11 +121,12 @@ public class CustomerServiceAgent {
      * Handle customer service requests
      * 处理客服请求（主要入口方法）
      * 
-     * @param message   User's message
-     * @param sessionId Session ID for conversation context
+     * @param context Conversation context of the current request
      * @return AI response with potential function calls
      */
-    public String handleCustomerService(String message, String sessionId) {
+    public String handleCustomerService(ConversationContext context) {
+        String message = context.message();
+        String sessionId = context.sessionId();
         if (message == null || message.trim().isEmpty()) {
             log.warn("Empty message provided for customer service, sessionId: {}", sessionId);
             return "How can I assist you with your order today?";
@@ -129,24 +135,14 @@ public class CustomerServiceAgent {
         try {
             log.info("Handling customer service request for session: {}", sessionId);
 
-            // 1. Get conversation history for context
-            List<ChatHistory> history = memoryService.getRecentHistory(sessionId, 10);
-            List<Message> messages = MessageConverter.convertToMessages(history);
-
-            // 2. Add current user message
-            messages.add(new UserMessage(message));
-
-            // 3. Call AI with Function Calling enabled
+            // 1-3. Build prompt with history and call AI with Function Calling enabled
             // AI will automatically call functions like:
             // - getOrderStatusFunction
             // - updateOrderAddressFunction
             // - getOrdersByEmailFunction
             // - checkInventoryFunction
-            String response = chatClient.prompt()
-                    .system(CUSTOMER_SERVICE_SYSTEM_PROMPT)
-                    .messages(messages)
-                    .call()
-                    .content();
+            String response = agentChatService.call(AgentProperties.CUSTOMER_SERVICE,
+                    buildRequest(context));
 
             log.info("Customer service response generated for session: {}", sessionId);
             return response;
@@ -159,4 +155,45 @@ public class CustomerServiceAgent {
         }
     }
 
+    /**
+     * Stream customer service response token by token
+     * 流式返回客服响应
+     *
+     * @param context Conversation context of the current request
+     * @return Flux of response content chunks
+     */
+    public Flux<String> streamCustomerService(ConversationContext context) {
+        String message = context.message();
+        String sessionId = context.sessionId();
+        if (message == null || message.trim().isEmpty()) {
+            log.warn("Empty message provided for customer service, sessionId: {}", sessionId);
+            return Flux.just("How can I assist you with your order today?");
+        }
+
+        log.info("Streaming customer service response for session: {}", sessionId);
+        return agentChatService.stream(AgentProperties.CUSTOMER_SERVICE, buildRequest(context))
+                .onErrorResume(e -> {
+                    log.error("Error streaming customer service response for session {}: {}",
+                            sessionId, e.getMessage(), e);
+                    return Flux.just("I apologize for the inconvenience. I'm having trouble processing your request. " +
+                            "Please try again or contact our support team directly.");
+                });
+    }
+
+    /**
+     * Build chat request with system prompt, conversation history and current message
+     * 构建包含系统提示词、对话历史和当前消息的请求
+     */
+    private ChatClient.ChatClientRequestSpec buildRequest(ConversationContext context) {
+        // 1. Conversation history loaded once for this request, trimmed to the token budget
+        List<Message> messages = promptBudgetService.assemble(AgentProperties.CUSTOMER_SERVICE, CUSTOMER_SERVICE_SYSTEM_PROMPT, Map.of(),
+                context.messages(10), context.message()).history();
+
+        // 2. Add current user message
+        messages.add(new UserMessage(context.message()));
+
+        return chatClient.prompt()
+                .system(CUSTOMER_SERVICE_SYSTEM_PROMPT)
+                .messages(messages);
+    }
 }
@@ -1,16 +1,18 @@
 package com.aura.ai.agent;
 
-import com.aura.model.entity.ChatHistory;
-import com.aura.service.ai.MemoryService;
-import com.aura.util.MessageConverter;
+import com.aura.config.AgentProperties;
+import com.aura.service.ai.AgentChatService;
+import com.aura.service.ai.PromptBudgetService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * General Chat Agent
@@ -27,7 +29,8 @@ import java.util.List;
 public class GeneralChatAgent {
 
     private final ChatClient chatClient;
-    private final MemoryService memoryService;
+    private final AgentChatService agentChatService;
+    private final PromptBudgetService promptBudgetService;
 
     /**
      * System prompt for general chat
@@ -54,11 +57,12 @@ public class GeneralChatAgent {
      * Handle general chat messages
      * 处理通用对话消息
      * 
-     * @param message User's message
-     * @param sessionId Session ID for conversation context
+     * @param context Conversation context of the current request
      * @return AI response
      */
-    public String handleGeneralChat(String message, String sessionId) {
+    public String handleGeneralChat(ConversationContext context) {
+        String message = context.message();
+        String sessionId = context.sessionId();
         if (message == null || message.trim().isEmpty()) {
             log.warn("Empty message provided for general chat, sessionId: {}", sessionId);
             return "I'm here to help! How can I assist you today?";
@@ -67,19 +71,9 @@ public class GeneralChatAgent {
         try {
             log.info("Handling general chat for session: {}", sessionId);
 
-            // 1. Get conversation history for context
-            List<ChatHistory> history = memoryService.getRecentHistory(sessionId, 10);
-            List<Message> messages = MessageConverter.convertToMessages(history);
-
-            // 2. Add current user message
-            messages.add(new UserMessage(message));
-
-            // 3. Call AI with system prompt and conversation history
-            String response = chatClient.prompt()
-                    .system(GENERAL_CHAT_SYSTEM_PROMPT)
-                    .messages(messages)
-                    .call()
-                    .content();
+            // 1-3. Call AI with system prompt and conversation history
+            String response = agentChatService.call(AgentProperties.GENERAL_CHAT,
+                    buildRequest(context));
 
             log.info("General chat response generated for session: {}", sessionId);
             return response;
@@ -90,4 +84,44 @@ public class GeneralChatAgent {
                    "Could you please try again?";
         }
     }
+
+    /**
+     * Stream general chat response token by token
+     * 流式返回通用对话响应
+     *
+     * @param context Conversation context of the current request
+     * @return Flux of response content chunks
+     */
+    public Flux<String> streamGeneralChat(ConversationContext context) {
+        String message = context.message();
+        String sessionId = context.sessionId();
+        if (message == null || message.trim().isEmpty()) {
+            log.warn("Empty message provided for general chat, sessionId: {}", sessionId);
+            return Flux.just("I'm here to help! How can I assist you today?");
+        }
+
+        log.info("Streaming general chat for session: {}", sessionId);
+        return agentChatService.stream(AgentProperties.GENERAL_CHAT, buildRequest(context))
+                .onErrorResume(e -> {
+                    log.error("Error streaming general chat for session {}: {}", sessionId, e.getMessage(), e);
+                    return Flux.just("I apologize, but I'm having trouble processing your message right now. " +
+                            "Could you please try again?");
+                });
+    }
+
+    /**
+     * Build chat request with system prompt, conversation history and current message
+     */
+    private ChatClient.ChatClientRequestSpec buildRequest(ConversationContext context) {
+        // 1. Conversation history loaded once for this request, trimmed to the token budget
+        List<Message> messages = promptBudgetService.assemble(AgentProperties.GENERAL_CHAT, GENERAL_CHAT_SYSTEM_PROMPT, Map.of(),
+                context.messages(10), context.message()).history();
+
+        // 2. Add current user message
+        messages.add(new UserMessage(context.message()));
+
+        return chatClient.prompt()
+                .system(GENERAL_CHAT_SYSTEM_PROMPT)
+                .messages(messages);
+    }
 }
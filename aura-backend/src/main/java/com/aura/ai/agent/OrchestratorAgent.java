@@ -1,16 +1,27 @@
 package com.aura.ai.agent;
 
-import com.aura.model.entity.ChatHistory;
-import com.aura.service.ai.MemoryService;
-import com.aura.util.MessageConverter;
+import com.aura.config.AgentProperties;
+import com.aura.config.ProductMentionProperties;
+import com.aura.model.entity.Product;
+import com.aura.service.ProductCatalog;
+import com.aura.service.ProductMentionDetector;
+import com.aura.service.ai.AgentChatService;
+import com.aura.service.ai.PromptBudgetService;
+import com.aura.service.ai.SpeculativeRetrievalService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Orchestrator Agent
@@ -32,7 +43,21 @@ public class OrchestratorAgent {
     private final ProductExpertAgent productExpertAgent;
     private final CustomerServiceAgent customerServiceAgent;
     private final GeneralChatAgent generalChatAgent;
-    private final MemoryService memoryService;
+    private final SpeculativeRetrievalService speculativeRetrievalService;
+    private final AgentChatService agentChatService;
+    private final PromptBudgetService promptBudgetService;
+    private final ProductMentionDetector productMentionDetector;
+    private final ProductMentionProperties productMentionProperties;
+    private final ProductCatalog productCatalog;
+
+    /**
+     * Words that make a product mention an order/service question ("cancel my Aura Flow order")
+     */
+    private static final Set<String> ORDER_TERMS = Set.of(
+            "order", "orders", "cancel", "cancellation", "refund", "return", "returns", "ship", "shipping",
+            "shipped", "delivery", "deliver", "delivered", "track", "tracking", "address", "invoice", "payment",
+            "warranty", "broken", "damaged", "defective", "faulty", "repair", "replacement", "exchange",
+            "complaint", "complain");
 
     /**
      * Intent classification prompt template
@@ -53,7 +78,8 @@ public class OrchestratorAgent {
     /**
      * Analyze user intent with conversation context
      */
-    public String analyzeIntent(String message, String sessionId) {
+    public String analyzeIntent(ConversationContext context) {
+        String message = context.message();
         // Validate input
         if (message == null || message.trim().isEmpty()) {
             log.warn("Empty message provided for intent analysis");
@@ -63,21 +89,34 @@ public class OrchestratorAgent {
         log.info("Analyzing intent for message: {}", message);
 
         try {
-            // Retrieve recent chat history for context
-            List<ChatHistory> history = memoryService.getRecentHistory(sessionId, 5);
-            List<Message> messages = MessageConverter.convertToMessages(history);
+            // Product mentions from the live catalog (one linear scan). Only full product names or IDs
+            // skip the classifier; generic aliases ("watch", "phone") are passed to it as a hint
+            Set<String> mentioned = productMentionDetector.detect(message);
+            if (productMentionProperties.isIntentFastPath() && !hasOrderTerm(message)) {
+                Set<String> named = productMentionDetector.detectExplicit(message);
+                if (!named.isEmpty()) {
+                    log.info("Message names products {} and no order terms, intent: PRODUCT_INQUIRY", named);
+                    return "PRODUCT_INQUIRY";
+                }
+            }
 
             // Create prompt template for intent classification
             String promptString = INTENT_PROMPT_TEMPLATE.replace("{message}", message);
+            if (!mentioned.isEmpty()) {
+                promptString += "\nProducts mentioned in the message: " + productNames(mentioned);
+            }
+
+            // Recent chat history for context (already loaded for this request), within the token budget
+            List<Message> messages = promptBudgetService.assemble(AgentProperties.INTENT, null, Map.of(),
+                    context.messages(5), promptString).history();
 
             // Add current message
             messages.add(new UserMessage(promptString));
 
-            String intent = chatClient.prompt()
-                    .messages(messages)     // ← 1. 传入消息列表
-                    .call()                 // ← 2. 调用OpenAI API
-                    .content()              // ← 3. 提取响应内容
-                    .trim();                // ← 4. 去除首尾空格
+            String intent = agentChatService.call(AgentProperties.INTENT,  // ← 2. 使用intent配置调用OpenAI API
+                    chatClient.prompt()
+                            .messages(messages))    // ← 1. 传入消息列表
+                    .trim();                        // ← 3. 去除首尾空格
 
             // Validate intent result
             if (intent == null || intent.isEmpty()) {
@@ -93,25 +132,49 @@ public class OrchestratorAgent {
         }
     }
 
+    private static boolean hasOrderTerm(String message) {
+        for (String word : message.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (ORDER_TERMS.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String productNames(Set<String> productIds) {
+        ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+        return productIds.stream()
+                .map(catalog::get)
+                .filter(Objects::nonNull)
+                .map(Product::getName)
+                .collect(Collectors.joining(", "));
+    }
+
     /**
      * Route message to appropriate agent based on intent
      * 根据意图路由消息到对应的Agent
      * 
      * 这是一个纯路由方法，不处理任何业务逻辑
      * 
-     * @param message   User's message
-     * @param sessionId Session ID
+     * @param context Conversation context built once for this request
      * @return Response from the appropriate agent
      */
-    public String routeMessage(String message, String sessionId) {
+    public String routeMessage(ConversationContext context) {
+        String message = context.message();
+        String sessionId = context.sessionId();
         if (message == null || message.trim().isEmpty()) {
             log.warn("Empty message provided for routing, sessionId: {}", sessionId);
             return "I'm here to help! Please tell me what you need.";
         }
 
+        // 0. Start manual retrieval speculatively while the intent is being classified
+        // (no-op unless app.ai.speculative-retrieval.enabled=true)
+        SpeculativeRetrievalService.Speculation speculation = speculativeRetrievalService.start(
+                () -> productExpertAgent.resolveRetrievalQuery(context));
+
         try {
             // 1. Analyze intent (classify user's intention)
-            String intent = analyzeIntent(message, sessionId);
+            String intent = analyzeIntent(context);
             log.info("Intent classified as: {} for session: {}", intent, sessionId);
 
             // 2. Route to appropriate agent based on intent
@@ -123,36 +186,92 @@ public class OrchestratorAgent {
                     log.info("║ Session: {}                 ║", sessionId);
                     log.info("╚═══════════════════════════════════════════════════════════════╝");
                     // Delegate to ProductExpertAgent
-                    return productExpertAgent.handleProductInquiry(message, sessionId);
+                    return productExpertAgent.handleProductInquiry(context, speculation);
 
                 case "ORDER_SERVICE":
                     log.info("╔═══════════════════════════════════════════════════════════════╗");
                     log.info("║ 🎯 ROUTING TO: CustomerServiceAgent                           ║");
                     log.info("║ Session: {}                 ║", sessionId);
                     log.info("╚═══════════════════════════════════════════════════════════════╝");
+                    speculativeRetrievalService.discard(speculation);
                     // Delegate to CustomerServiceAgent
-                    return customerServiceAgent.handleCustomerService(message, sessionId);
+                    return customerServiceAgent.handleCustomerService(context);
 
                 case "GENERAL_CHAT":
                     log.info("╔═══════════════════════════════════════════════════════════════╗");
                     log.info("║ 🎯 ROUTING TO: GeneralChatAgent                               ║");
                     log.info("║ Session: {}                 ║", sessionId);
                     log.info("╚═══════════════════════════════════════════════════════════════╝");
+                    speculativeRetrievalService.discard(speculation);
                     // Delegate to GeneralChatAgent
-                    return generalChatAgent.handleGeneralChat(message, sessionId);
+                    return generalChatAgent.handleGeneralChat(context);
 
                 case "UNKNOWN":
                 default:
                     log.warn("Unknown intent for message: {}", message);
+                    speculativeRetrievalService.discard(speculation);
                     // Fallback to general chat for unknown intents
-                    return generalChatAgent.handleGeneralChat(message, sessionId);
+                    return generalChatAgent.handleGeneralChat(context);
             }
 
         } catch (Exception e) {
+            speculativeRetrievalService.discard(speculation);
             log.error("Error routing message for session {}: {}", sessionId, e.getMessage(), e);
             return "I apologize, but I'm having trouble processing your request right now. " +
                     "Please try again or rephrase your question.";
         }
     }
 
+    /**
+     * Route message and stream the selected agent's response
+     * 路由消息并流式返回对应Agent的响应
+     *
+     * Intent analysis still runs to completion first; only the final agent
+     * completion is streamed.
+     *
+     * @param context Conversation context built once for this request
+     * @return Flux of response content chunks
+     */
+    public Flux<String> routeMessageStream(ConversationContext context) {
+        String message = context.message();
+        String sessionId = context.sessionId();
+        if (message == null || message.trim().isEmpty()) {
+            log.warn("Empty message provided for routing, sessionId: {}", sessionId);
+            return Flux.just("I'm here to help! Please tell me what you need.");
+        }
+
+        return Flux.defer(() -> {
+            SpeculativeRetrievalService.Speculation speculation = speculativeRetrievalService.start(
+                    () -> productExpertAgent.resolveRetrievalQuery(context));
+
+            String intent = analyzeIntent(context);
+            log.info("Intent classified as: {} for session: {} (streaming)", intent, sessionId);
+
+            switch (intent) {
+                case "PRODUCT_INQUIRY":
+                    log.info("🎯 STREAMING FROM: ProductExpertAgent, session: {}", sessionId);
+                    return productExpertAgent.streamProductInquiry(context, speculation);
+
+                case "ORDER_SERVICE":
+                    log.info("🎯 STREAMING FROM: CustomerServiceAgent, session: {}", sessionId);
+                    speculativeRetrievalService.discard(speculation);
+                    return customerServiceAgent.streamCustomerService(context);
+
+                case "GENERAL_CHAT":
+                    log.info("🎯 STREAMING FROM: GeneralChatAgent, session: {}", sessionId);
+                    speculativeRetrievalService.discard(speculation);
+                    return generalChatAgent.streamGeneralChat(context);
+
+                case "UNKNOWN":
+                default:
+                    log.warn("Unknown intent for message: {}", message);
+                    speculativeRetrievalService.discard(speculation);
+                    return generalChatAgent.streamGeneralChat(context);
+            }
+        }).onErrorResume(e -> {
+            log.error("Error routing streamed message for session {}: {}", sessionId, e.getMessage(), e);
+            return Flux.just("I apologize, but I'm having trouble processing your request right now. " +
+                    "Please try again or rephrase your question.");
+        });
+    }
 }
@@ -1,12 +1,19 @@
 package com.aura.ai.agent;
 
+import com.aura.config.AgentProperties;
 import com.aura.model.entity.ChatHistory;
 import com.aura.model.entity.Product;
+import com.aura.service.ProductCatalog;
+import com.aura.service.ProductMentionDetector;
+import com.aura.service.ProductProjections;
 import com.aura.service.ProductService;
-import com.aura.service.ai.MemoryService;
+import com.aura.service.ProductSuggestIndex;
+import com.aura.service.ai.AgentChatService;
+import com.aura.service.ai.PromptBudgetService;
 import com.aura.service.ai.RAGService;
-import com.aura.util.MessageConverter;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.aura.service.ai.SemanticAnswerCache;
+import com.aura.service.ai.SingleFlightService;
+import com.aura.service.ai.SpeculativeRetrievalService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -14,14 +21,19 @@ import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Product Expert Agent
@@ -32,88 +44,68 @@ import java.util.Set;
 @Slf4j
 public class ProductExpertAgent {
 
+    @Qualifier("productExpertChatClient")
     private final ChatClient chatClient;
     private final ProductService productService;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final ProductMentionDetector productMentionDetector;
+    private final ProductCatalog productCatalog;
     private final RAGService ragService;
-    private final MemoryService memoryService;
-    private final ObjectMapper objectMapper;
+    private final ProductProjections productProjections;
+    private final SpeculativeRetrievalService speculativeRetrievalService;
+    private final AgentChatService agentChatService;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final SingleFlightService singleFlightService;
+    private final PromptBudgetService promptBudgetService;
 
-    public String handleProductInquiry(String question, String sessionId) {
+    /**
+     * Handle product inquiry, reusing speculative manual retrieval if available
+     * 处理产品咨询（如有推测式检索结果则复用）
+     *
+     * @param context     Conversation context of the current request
+     * @param speculation In-flight speculative retrieval started by OrchestratorAgent (may be null)
+     */
+    public String handleProductInquiry(ConversationContext context,
+            SpeculativeRetrievalService.Speculation speculation) {
+        String question = context.message();
+        String sessionId = context.sessionId();
         if (!StringUtils.hasText(question)) {
             log.warn("Product inquiry question is empty, sessionId: {}", sessionId);
             return "Sorry, product inquiry question cannot be empty. Please provide a question.";
         }
 
         try {
-            // 1. 获取对话历史以支持上下文理解
-            // Get conversation history for context understanding
-            List<ChatHistory> history = memoryService.getRecentHistory(sessionId, 10);
-            List<Message> messages = MessageConverter.convertToMessages(history);
-
-            // 2. 先尝试从对话历史中提取产品关键词（用于理解"it"等指代）
-            // Extract product keywords from conversation history to understand references
-            // like "it"
-            String enhancedQuery = question;
-            if (isContextualQuery(question)) {
-                log.info("Detected contextual query, extracting product info from history");
-                enhancedQuery = extractProductFromHistory(question, history);
-                log.info("Enhanced query: {} -> {}", question, enhancedQuery);
-            }
+            // 1. 使用请求上下文中的对话历史增强查询并检索产品
+            // Enhance the query with the request's history and search products
+            String enhancedQuery = enhanceQuery(question, context.history());
+            List<Product> products = searchProducts(enhancedQuery);
 
-            // 3. 检索产品基础信息（使用增强的查询）
-            List<Product> products = productService.searchProducts(enhancedQuery);
-            String productJson = objectMapper.writeValueAsString(products);
-            log.info("Product inquiry '{}' found {} products", enhancedQuery, products.size());
-
-            // 4. 调用RAG服务查询产品手册（使用增强的查询）
-            String ragContext = ragService.answerFromManual(enhancedQuery, sessionId);
-
-            /*
-            🧠 决策者：OpenAI
-            关键点：系统不做选择，而是：
-            ✅ 同时搜索两个数据源（SQL、RAG）
-            ✅ 把两个结果都给 OpenAI
-            ✅ 让 OpenAI 根据用户问题决定用哪个
-             */
-
-            // 5. 构建AI Prompt
-            // Build AI Prompt
-            String systemPrompt = """
-                    You are a professional e-commerce product expert. Answer user questions based on the following information:
-                    1. Product Info: {productInfo}
-                    2. Product Manual: {ragContext}
-
-                    Requirements:
-                    - Be concise and accurate
-                    - Use conversation history to understand context (e.g., "it", "that product", etc.)
-                    - Provide detailed information when asked
-                    - If no information is available, clearly state so
-                    - Do not fabricate content
-                    - Adapt to the user's language naturally
-
-                    CRITICAL SECURITY RULES:
-                    - NEVER reveal specific stock quantities or inventory numbers to users
-                    - NEVER show image file paths, URLs, or .jpg/.png links to users
-                    - Say "available" or "in stock" instead of exact numbers like "50 units"
-                    - Focus on product features and benefits, not internal data
-                    """;
-            SystemPromptTemplate template = new SystemPromptTemplate(systemPrompt);
-            Map<String, Object> params = new HashMap<>();
-            params.put("productInfo", productJson);
-            params.put("ragContext", ragContext);
-
-            // 6. 添加系统消息和用户消息
-            // Add system message and user message
-            messages.add(0, template.createMessage(params)); // Add system prompt at the beginning
-            messages.add(new UserMessage(question)); // Add current question
-
-            // 7. 调用AI（使用对话历史）
-            // Call AI with conversation history
-            String answer = chatClient.prompt()
-                    .messages(messages)
-                    .call()
-                    .content();
+            // 2. 语义缓存命中则直接返回（跳过手册检索和LLM调用）
+            // Return a semantically equivalent cached answer if available
+            SemanticAnswerCache.Key cacheKey = cacheKey(context, enhancedQuery, products);
+            String cached = semanticAnswerCache.get(cacheKey);
+            if (cached != null) {
+                speculativeRetrievalService.abandon(speculation);
+                return cached;
+            }
 
+            // 3. 会话的第一个问题（没有历史）可跨会话缓存，相同的并发请求共享一次计算；
+            //    有历史的会话总是带历史单独计算
+            // A session's first question has no history to leak, so its answer can be cached
+            // and identical concurrent requests from any session can share one computation
+            if (cacheKey == null) {
+                return generateAnswer(context, enhancedQuery, products, speculation, null);
+            }
+            boolean[] leader = { false };
+            String answer = singleFlightService.execute(AgentProperties.PRODUCT_EXPERT, flightKey(question, products),
+                    () -> {
+                        leader[0] = true;
+                        return generateAnswer(context, enhancedQuery, products, speculation, cacheKey);
+                    });
+            if (!leader[0]) {
+                // Shared another request's answer: this request's speculation is unused
+                speculativeRetrievalService.abandon(speculation);
+            }
             return answer;
         } catch (Exception e) {
             log.error("Failed to handle product inquiry, question: {}", question, e);
@@ -121,6 +113,210 @@ public class ProductExpertAgent {
         }
     }
 
+    /**
+     * Stream product inquiry response token by token
+     * 流式返回产品咨询响应
+     *
+     * Retrieval (product search + manual RAG) completes before the first token;
+     * only the final completion is streamed.
+     */
+    public Flux<String> streamProductInquiry(ConversationContext context,
+            SpeculativeRetrievalService.Speculation speculation) {
+        String question = context.message();
+        String sessionId = context.sessionId();
+        if (!StringUtils.hasText(question)) {
+            log.warn("Product inquiry question is empty, sessionId: {}", sessionId);
+            return Flux.just("Sorry, product inquiry question cannot be empty. Please provide a question.");
+        }
+
+        return Flux.defer(() -> {
+                    String enhancedQuery = enhanceQuery(question, context.history());
+                    List<Product> products = searchProducts(enhancedQuery);
+
+                    SemanticAnswerCache.Key cacheKey = cacheKey(context, enhancedQuery, products);
+                    String cached = semanticAnswerCache.get(cacheKey);
+                    if (cached != null) {
+                        speculativeRetrievalService.abandon(speculation);
+                        return Flux.just(cached);
+                    }
+                    long startTime = System.currentTimeMillis();
+
+                    List<Message> messages;
+                    try {
+                        messages = buildMessages(context, enhancedQuery, products, speculation);
+                    } catch (Exception e) {
+                        return Flux.error(e);
+                    }
+
+                    // Cache the full answer once the stream completes
+                    StringBuilder answer = new StringBuilder();
+                    return agentChatService.stream(AgentProperties.PRODUCT_EXPERT,
+                                    chatClient.prompt().messages(messages))
+                            .doOnNext(answer::append)
+                            .doOnComplete(() -> semanticAnswerCache.put(cacheKey, answer.toString(),
+                                    System.currentTimeMillis() - startTime));
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to stream product inquiry, question: {}", question, e);
+                    return Flux.just("Sorry, an error occurred while processing your inquiry. Please try again later.");
+                });
+    }
+
+    /**
+     * Retrieve manual context, call the model and cache the answer
+     * 检索手册上下文、调用AI并缓存回答
+     *
+     * @param cacheKey Semantic cache key for a session's first question, or null (not cached)
+     */
+    private String generateAnswer(ConversationContext context, String enhancedQuery, List<Product> products,
+            SpeculativeRetrievalService.Speculation speculation, SemanticAnswerCache.Key cacheKey) {
+        long startTime = System.currentTimeMillis();
+
+        // 构建包含产品信息、手册上下文和对话历史的消息
+        // Build messages with product info, manual context and conversation history
+        List<Message> messages = buildMessages(context, enhancedQuery, products, speculation);
+
+        // 调用AI（使用对话历史）
+        // Call AI with conversation history
+        String answer = agentChatService.call(AgentProperties.PRODUCT_EXPERT,
+                chatClient.prompt().messages(messages));
+
+        semanticAnswerCache.put(cacheKey, answer, System.currentTimeMillis() - startTime);
+        return answer;
+    }
+
+    /**
+     * Keyword search, falling back to semantic search when nothing matches literally
+     * 关键词搜索产品，没有结果时使用语义搜索
+     */
+    private List<Product> searchProducts(String query) {
+        List<Product> products = productService.searchProducts(query);
+        return products.isEmpty() ? productService.semanticSearchProducts(query) : products;
+    }
+
+    /**
+     * Single-flight key: normalized question + product scope
+     * Only used for a session's first question, whose prompt carries no session history, so a shared
+     * answer never contains another user's conversation.
+     */
+    private String flightKey(String question, List<Product> products) {
+        return SingleFlightService.normalize(question) + "|"
+                + products.stream().map(Product::getId).sorted().collect(Collectors.joining(","));
+    }
+
+    /**
+     * Semantic cache key for a product inquiry
+     * 产品咨询的语义缓存键
+     *
+     * Only a session's first question is cached or served from the cache: once the session has
+     * history, any follow-up ("what colors?", "and the price?") may depend on it, and its answer
+     * must neither come from nor be shared with other sessions.
+     */
+    private SemanticAnswerCache.Key cacheKey(ConversationContext context, String enhancedQuery,
+            List<Product> products) {
+        String question = context.message();
+        if (context.hasPriorTurns() || !question.equals(enhancedQuery)) {
+            return null;
+        }
+        List<String> productIds = products.stream().map(Product::getId).toList();
+        return semanticAnswerCache.key(AgentProperties.PRODUCT_EXPERT, question, productIds);
+    }
+
+    /**
+     * Build prompt messages for a product inquiry
+     * 构建产品咨询的Prompt消息（系统提示词 + 对话历史 + 当前问题），按Token预算裁剪
+     */
+    private List<Message> buildMessages(ConversationContext context, String enhancedQuery, List<Product> products,
+            SpeculativeRetrievalService.Speculation speculation) {
+        // 1. 产品详情投影（预先序列化，不含长描述、图片、时间戳和库存数量）
+        String productJson = productProjections.toJson(products, ProductProjections.View.DETAIL);
+        log.info("Product inquiry '{}' found {} products", enhancedQuery, products.size());
+
+        // 2. 调用RAG服务查询产品手册（使用增强的查询）
+        // Reuse speculative retrieval results when the query matches
+        List<Document> speculativeDocs = speculativeRetrievalService.claim(speculation, enhancedQuery);
+        String ragContext = speculativeDocs != null
+                ? ragService.answerFromManual(enhancedQuery, context.sessionId(), speculativeDocs)
+                : ragService.answerFromManual(enhancedQuery, context.sessionId());
+
+        /*
+        🧠 决策者：OpenAI
+        关键点：系统不做选择，而是：
+        ✅ 同时搜索两个数据源（SQL、RAG）
+        ✅ 把两个结果都给 OpenAI
+        ✅ 让 OpenAI 根据用户问题决定用哪个
+         */
+
+        // 3. 构建AI Prompt
+        // Build AI Prompt
+        String systemPrompt = """
+                You are a professional e-commerce product expert. Answer user questions based on the following information:
+                1. Product Info (availability is in_stock, low_stock or out_of_stock): {productInfo}
+                2. Product Manual: {ragContext}
+
+                Requirements:
+                - Be concise and accurate
+                - Use conversation history to understand context (e.g., "it", "that product", etc.)
+                - Provide detailed information when asked
+                - If the information above does not cover the question, use searchProductsFunction
+                  or queryProductManualFunction to look it up
+                - If no information is available, clearly state so
+                - Do not fabricate content
+                - Adapt to the user's language naturally
+
+                CRITICAL SECURITY RULES:
+                - NEVER reveal specific stock quantities or inventory numbers to users
+                - NEVER show image file paths, URLs, or .jpg/.png links to users
+                - Say "available" or "in stock" instead of exact numbers like "50 units"
+                - Focus on product features and benefits, not internal data
+                """;
+
+        // 4. 按Token预算裁剪：先丢弃最早的对话历史，再截断产品信息、手册内容
+        // Fit the token budget; the conversation history (converted once per request) gives context
+        // understanding (enhancedQuery already resolves references like "it" from the same history)
+        Map<String, String> sections = new LinkedHashMap<>();
+        sections.put("ragContext", ragContext);
+        sections.put("productInfo", productJson);
+        PromptBudgetService.AssembledPrompt assembled = promptBudgetService.assemble(
+                AgentProperties.PRODUCT_EXPERT, systemPrompt, sections,
+                context.messages(10), context.message());
+        List<Message> messages = assembled.history();
+
+        SystemPromptTemplate template = new SystemPromptTemplate(systemPrompt);
+        Map<String, Object> params = new HashMap<>(assembled.context());
+
+        // 5. 添加系统消息和用户消息
+        // Add system message and user message
+        messages.add(0, template.createMessage(params)); // Add system prompt at the beginning
+        messages.add(new UserMessage(context.message())); // Add current question
+
+        return messages;
+    }
+
+    /**
+     * Resolve the query used for manual retrieval
+     * 解析用于手册检索的查询（与 handleProductInquiry 使用的增强查询一致）
+     *
+     * Used by speculative retrieval so that the pre-fetched documents match
+     * what this agent would retrieve itself.
+     */
+    public String resolveRetrievalQuery(ConversationContext context) {
+        return enhanceQuery(context.message(), context.history());
+    }
+
+    /**
+     * Enhance contextual queries with product keywords from history
+     */
+    private String enhanceQuery(String question, List<ChatHistory> history) {
+        if (!isContextualQuery(question)) {
+            return question;
+        }
+        log.info("Detected contextual query, extracting product info from history");
+        String enhancedQuery = extractProductFromHistory(question, history);
+        log.info("Enhanced query: {} -> {}", question, enhancedQuery);
+        return enhancedQuery;
+    }
+
     /**
      * Check if the query is contextual (contains references like "it", "that",
      * etc.)
@@ -136,63 +332,19 @@ public class ProductExpertAgent {
                 lowerQuery.contains("more info");
     }
 
-    /**
-     * Product keyword mappings - maps common terms to product names
-     * 产品关键词映射 - 将通用词汇映射到产品名称
-     */
-    private static final Map<String, String> PRODUCT_KEYWORD_MAPPINGS = Map.ofEntries(
-        // Direct product names - 直接产品名称
-        Map.entry("harmony", "harmony"),
-        Map.entry("pulse", "pulse"),
-        Map.entry("flow", "flow"),
-        Map.entry("breeze", "breeze"),
-        Map.entry("echo", "echo"),
-        Map.entry("slate", "slate"),
-        
-        // Common aliases for Harmony (headphones) - 耳机的通用别名
-        Map.entry("headphone", "harmony"),
-        Map.entry("headphones", "harmony"),
-        Map.entry("headset", "harmony"),
-        Map.entry("earphone", "harmony"),
-        Map.entry("earphones", "harmony"),
-        
-        // Common aliases for Pulse (watch) - 手表的通用别名
-        Map.entry("watch", "pulse"),
-        Map.entry("smartwatch", "pulse"),
-        Map.entry("wristband", "pulse"),
-        
-        // Common aliases for Flow (phone) - 手机的通用别名
-        Map.entry("phone", "flow"),
-        Map.entry("smartphone", "flow"),
-        Map.entry("mobile", "flow"),
-        
-        // Common aliases for Breeze (air purifier) - 空气净化器的通用别名
-        Map.entry("purifier", "breeze"),
-        Map.entry("air purifier", "breeze"),
-        Map.entry("air cleaner", "breeze"),
-        Map.entry("cleaner", "breeze"),
-        
-        // Common aliases for Echo (speaker) - 音箱的通用别名
-        Map.entry("speaker", "echo"),
-        Map.entry("smart speaker", "echo"),
-        
-        // Common aliases for Slate (pad) - 平板的通用别名
-        Map.entry("pad", "slate"),
-        Map.entry("tablet", "slate"),
-        Map.entry("ipad", "slate")
-    );
-
     /**
      * Extract product keywords from conversation history
      * 从对话历史中提取产品关键词
      * 
      * Improvements:
      * 1. De-duplication using Set
-     * 2. Support common aliases (e.g., "headphones" -> "harmony")
-     * 3. Word boundary matching to avoid false positives
+     * 2. Products are detected from the live catalog (names, IDs, configured aliases such as
+     *    "headphones" -> Aura Harmony) in one linear scan per message
+     * 3. Fuzzy product names via the trigram index (e.g., "harmoney" -> "harmony")
      */
     private String extractProductFromHistory(String question, List<ChatHistory> history) {
-        Set<String> productKeywords = new java.util.LinkedHashSet<>();  // Use LinkedHashSet to maintain order
+        Set<String> productKeywords = new LinkedHashSet<>();  // Use LinkedHashSet to maintain order
+        ProductCatalog.Snapshot catalog = productCatalog.snapshot();
 
         // Look for product names in recent conversation (last 5 messages)
         for (int i = history.size() - 1; i >= 0 && i >= history.size() - 5; i--) {
@@ -204,20 +356,20 @@ public class ProductExpertAgent {
                 productKeywords.add("aura");
             }
 
-            // Check each keyword mapping
-            for (Map.Entry<String, String> entry : PRODUCT_KEYWORD_MAPPINGS.entrySet()) {
-                String keyword = entry.getKey();
-                String productName = entry.getValue();
-                
-                // Use word boundary matching for better accuracy
-                // 使用词边界匹配提高准确性
-                String pattern = "\\b" + keyword + "s?\\b";  // "s?" allows for optional plural
-                if (message.matches(".*" + pattern + ".*")) {
-                    productKeywords.add(productName);
-                    
-                    // If we found a specific product, also add "aura" prefix
-                    // 如果找到具体产品，也添加 "aura" 前缀
-                    productKeywords.add("aura");
+            // Add the name of each mentioned product (e.g., "aura harmony")
+            // 添加提及的产品名称
+            for (String productId : productMentionDetector.detect(message)) {
+                Product product = catalog.get(productId);
+                if (product != null) {
+                    productKeywords.addAll(List.of(product.getName().toLowerCase().split("\\s+")));
+                }
+            }
+
+            // Resolve misspelled product names with the trigram index
+            // 使用 trigram 索引解析拼写错误的产品名
+            for (String word : message.split("[^\\p{L}\\p{N}]+")) {
+                if (word.length() >= 4) {
+                    productSuggestIndex.resolveNameWord(word).ifPresent(productKeywords::add);
                 }
             }
         }
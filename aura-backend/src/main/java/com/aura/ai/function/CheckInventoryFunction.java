@@ -1,7 +1,7 @@
 package com.aura.ai.function;
 
-import com.aura.model.entity.Product;
-import com.aura.service.ProductService;
+import com.aura.service.InventoryReservationService;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Description;
 import org.springframework.stereotype.Component;
@@ -17,17 +17,18 @@ import java.util.function.Function;
 public class CheckInventoryFunction
         implements Function<CheckInventoryFunction.Request, CheckInventoryFunction.Response> {
 
-    private final ProductService productService;
+    private final InventoryReservationService inventoryReservationService;
 
     @Override
     public Response apply(Request request) {
-        Product product = productService.getProductById(request.productId());
-        if (product == null) {
+        int stock;
+        try {
+            // Available stock net of in-flight reservations
+            stock = inventoryReservationService.available(request.productId());
+        } catch (EntityNotFoundException e) {
             return new Response(request.productId(), 0, false);
         }
-        int stock = product.getStock() != null ? product.getStock() : 0;
         return new Response(request.productId(), stock, stock > 0);
-
     }
 
     public record Request(String productId) {
@@ -1,6 +1,7 @@
 package com.aura.ai.function;
 
 import com.aura.model.entity.Product;
+import com.aura.service.ProductProjections;
 import com.aura.service.ProductService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,19 +15,24 @@ import java.util.List;
  * Search Products Function
  */
 @Component
-@Description("Search products by keyword or category")
+@Description("Search products by keyword, natural-language need or category")
 @RequiredArgsConstructor
 @Slf4j
 public class SearchProductsFunction
         implements Function<SearchProductsFunction.Request, SearchProductsFunction.Response> {
 
     private final ProductService productService;
+    private final ProductProjections productProjections;
 
     @Override
     public Response apply(Request request) {
         List<Product> list;
         if (request.keyword() != null && !request.keyword().isBlank()) {
             list = productService.searchProducts(request.keyword());
+            if (list.isEmpty()) {
+                // No literal match: search by meaning ("something for sleeping on flights")
+                list = productService.semanticSearchProducts(request.keyword());
+            }
         } else if (request.category() != null && !request.category().isBlank()) {
             list = productService.getProductsByCategory(request.category());
         } else {
@@ -34,22 +40,12 @@ public class SearchProductsFunction
         }
         if (list == null)
             list = List.of();
-        List<ProductInfo> infos = list.stream()
-                .map(p -> new ProductInfo(
-                        p.getId(),
-                        p.getName(),
-                        p.getPrice().doubleValue(),
-                        p.getCategory()))
-                .toList();
-        return new Response(infos);
+        return new Response(productProjections.summaries(list));
     }
 
     public record Request(String keyword, String category) {
     }
 
-    public record Response(List<ProductInfo> products) {
-    }
-
-    public record ProductInfo(String id, String name, double price, String category) {
+    public record Response(List<ProductProjections.Summary> products) {
     }
 }
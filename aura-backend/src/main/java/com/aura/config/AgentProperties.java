@@ -0,0 +1,52 @@
+package com.aura.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Agent Properties
+ *
+ * Per-agent chat options configured under app.agents.*
+ * Keys: intent, product-expert, customer-service, general-chat, rag, summary
+ *
+ * Unset fields fall back to spring.ai.openai.chat.options.
+ * prompt-tokens is the input token budget enforced by PromptBudgetService (unset = no limit).
+ * hard-timeout: false for agents whose tools have side effects (orders): the caller does not stop
+ * waiting at timeout while a tool may still complete; each HTTP request is still bounded by the read timeout.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app")
+@Data
+public class AgentProperties {
+
+    public static final String INTENT = "intent";
+    public static final String PRODUCT_EXPERT = "product-expert";
+    public static final String CUSTOMER_SERVICE = "customer-service";
+    public static final String GENERAL_CHAT = "general-chat";
+    public static final String RAG = "rag";
+    public static final String SUMMARY = "summary";
+
+    private Map<String, AgentOptions> agents = new LinkedHashMap<>();
+
+    /**
+     * Get options for an agent (empty options if not configured)
+     */
+    public AgentOptions get(String agent) {
+        return agents.getOrDefault(agent, new AgentOptions());
+    }
+
+    @Data
+    public static class AgentOptions {
+        private String model;
+        private Integer maxTokens;
+        private Double temperature;
+        private Duration timeout;
+        private boolean hardTimeout = true;
+        private Integer promptTokens;
+    }
+}
@@ -0,0 +1,49 @@
+package com.aura.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Async Configuration
+ *
+ * Configures the shared executor used for background AI work
+ * (speculative retrieval and other off-request-path tasks).
+ *
+ * Declaring any executor bean makes Spring Boot skip its default applicationTaskExecutor,
+ * which MVC async requests and SSE streaming use, so it is declared here as well from
+ * Boot's builder (spring.task.execution.*). Inject aiTaskExecutor by qualifier.
+ */
+@Configuration
+public class AsyncConfig {
+
+    @Value("${app.ai.executor.core-pool-size:4}")
+    private int corePoolSize;
+
+    @Value("${app.ai.executor.max-pool-size:16}")
+    private int maxPoolSize;
+
+    @Value("${app.ai.executor.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor aiTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-task-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+}
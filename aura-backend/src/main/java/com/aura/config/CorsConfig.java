@@ -31,6 +31,7 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins(allowedOrigins)
                 .allowedMethods(allowedMethods)
                 .allowedHeaders(allowedHeaders)
+                .exposedHeaders("ETag")
                 .maxAge(maxAge)
                 .allowCredentials(false);
     }
@@ -1,35 +1,165 @@
 package com.aura.config;
 
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.autoconfigure.openai.OpenAiChatProperties;
+import org.springframework.ai.autoconfigure.openai.OpenAiConnectionProperties;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.observation.ChatModelObservationConvention;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.model.function.FunctionCallbackResolver;
 import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.client.ClientHttpRequestFactories;
+import org.springframework.boot.web.client.ClientHttpRequestFactorySettings;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * OpenAI Configuration
- * 
- * Configures OpenAI chat client and embedding model for AI agent functionality.
+ *
+ * Configures OpenAI chat clients and embedding model for AI agent functionality.
+ *
+ * Each agent gets a ChatClient carrying only the tools it needs, so calls that
+ * use no tools (intent classification, general chat, RAG answers) do not send
+ * every function's JSON schema with the prompt.
+ *
+ * Blocking model calls get an HTTP read timeout equal to the longest agent timeout,
+ * so a call AgentChatService stopped waiting for does not hold its thread indefinitely.
+ * The timeout is set only on the RestClient of the chat model's OpenAiApi (the model is declared
+ * here instead of by Spring AI's auto-configuration); other RestClients keep their own settings.
  */
 @Configuration
 public class OpenAIConfig {
 
+    /**
+     * CustomerServiceAgent Functions (Function Calling)
+     */
+    public static final List<String> ORDER_TOOLS = List.of(
+            "updateOrderAddressFunction",
+            "getOrderStatusFunction",
+            "getOrdersByEmailFunction",
+            "cancelOrderFunction",
+            "checkInventoryFunction");
+
+    /**
+     * ProductExpertAgent Functions (Function Calling)
+     * Product search and manual lookup for follow-up questions the pre-fetched context does not cover
+     */
+    public static final List<String> PRODUCT_TOOLS = List.of(
+            "searchProductsFunction",
+            "queryProductManualFunction",
+            "checkInventoryFunction");
+
+    /**
+     * Tool set used by each call type (used for the prompt token report)
+     */
+    public static final Map<String, List<String>> TOOLS_BY_CALL_TYPE = new LinkedHashMap<>();
+
+    static {
+        TOOLS_BY_CALL_TYPE.put(AgentProperties.INTENT, List.of());
+        TOOLS_BY_CALL_TYPE.put(AgentProperties.GENERAL_CHAT, List.of());
+        TOOLS_BY_CALL_TYPE.put(AgentProperties.RAG, List.of());
+        TOOLS_BY_CALL_TYPE.put(AgentProperties.SUMMARY, List.of());
+        TOOLS_BY_CALL_TYPE.put(AgentProperties.CUSTOMER_SERVICE, ORDER_TOOLS);
+        TOOLS_BY_CALL_TYPE.put(AgentProperties.PRODUCT_EXPERT, PRODUCT_TOOLS);
+    }
+
+    /**
+     * Chat model, configured from spring.ai.openai.* like the auto-configured one, whose RestClient
+     * (blocking calls) gets a read timeout of the longest app.agents.*.timeout
+     */
     @Bean
+    public OpenAiChatModel openAiChatModel(OpenAiConnectionProperties connectionProperties,
+            OpenAiChatProperties chatProperties,
+            AgentProperties agentProperties,
+            ObjectProvider<RestClient.Builder> restClientBuilderProvider,
+            ObjectProvider<WebClient.Builder> webClientBuilderProvider,
+            ObjectProvider<FunctionCallback> toolFunctionCallbacks,
+            FunctionCallbackResolver functionCallbackResolver,
+            RetryTemplate retryTemplate,
+            ResponseErrorHandler responseErrorHandler,
+            ObjectProvider<ObservationRegistry> observationRegistry,
+            ObjectProvider<ChatModelObservationConvention> observationConvention) {
+        String baseUrl = firstText(chatProperties.getBaseUrl(), connectionProperties.getBaseUrl());
+        String apiKey = firstText(chatProperties.getApiKey(), connectionProperties.getApiKey());
+        MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+        String projectId = firstText(chatProperties.getProjectId(), connectionProperties.getProjectId());
+        if (projectId != null) {
+            headers.add("OpenAI-Project", projectId);
+        }
+        String organizationId = firstText(chatProperties.getOrganizationId(), connectionProperties.getOrganizationId());
+        if (organizationId != null) {
+            headers.add("OpenAI-Organization", organizationId);
+        }
+
+        // A builder of its own (prototype bean): the read timeout does not reach other RestClients
+        RestClient.Builder restClientBuilder = restClientBuilderProvider.getIfAvailable(RestClient::builder);
+        Duration readTimeout = agentProperties.getAgents().values().stream()
+                .map(AgentProperties.AgentOptions::getTimeout)
+                .filter(Objects::nonNull)
+                .max(Duration::compareTo)
+                .orElse(null);
+        if (readTimeout != null) {
+            restClientBuilder.requestFactory(ClientHttpRequestFactories.get(
+                    ClientHttpRequestFactorySettings.DEFAULTS.withReadTimeout(readTimeout)));
+        }
+
+        OpenAiApi openAiApi = new OpenAiApi(baseUrl, apiKey, headers, chatProperties.getCompletionsPath(),
+                "/v1/embeddings", restClientBuilder, webClientBuilderProvider.getIfAvailable(WebClient::builder),
+                responseErrorHandler);
+        OpenAiChatModel chatModel = new OpenAiChatModel(openAiApi, chatProperties.getOptions(),
+                functionCallbackResolver, toolFunctionCallbacks.orderedStream().toList(), retryTemplate,
+                observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP));
+        observationConvention.ifAvailable(chatModel::setObservationConvention);
+        return chatModel;
+    }
+
+    private static String firstText(String value, String fallback) {
+        return StringUtils.hasText(value) ? value : StringUtils.hasText(fallback) ? fallback : null;
+    }
+
+    /**
+     * Plain chat client without tools
+     * Used by OrchestratorAgent (intent classification), GeneralChatAgent, RAGService and ConversationSummaryService
+     */
+    @Bean
+    @Primary
     public ChatClient chatClient(OpenAiChatModel chatModel) {
+        return ChatClient.builder(chatModel).build();
+    }
+
+    /**
+     * Chat client with order tools for CustomerServiceAgent
+     */
+    @Bean
+    public ChatClient customerServiceChatClient(OpenAiChatModel chatModel) {
+        return ChatClient.builder(chatModel)
+                .defaultFunctions(ORDER_TOOLS.toArray(String[]::new))
+                .build();
+    }
+
+    /**
+     * Chat client with product/manual tools for ProductExpertAgent
+     */
+    @Bean
+    public ChatClient productExpertChatClient(OpenAiChatModel chatModel) {
         return ChatClient.builder(chatModel)
-                .defaultFunctions(
-                        // === CustomerServiceAgent Functions (Function Calling) ===
-                        "updateOrderAddressFunction",
-                        "getOrderStatusFunction",
-                        "getOrdersByEmailFunction",
-                        "cancelOrderFunction",
-                        "checkInventoryFunction",
-                        
-                        // === ProductExpertAgent Functions (Direct Service Call) ===
-                        // Note: ProductExpertAgent does not use Function Calling.
-                        // It directly calls productService and ragService in Java code.
-                        // These are registered for potential future use.
-                        "queryProductManualFunction",
-                        "searchProductsFunction")
+                .defaultFunctions(PRODUCT_TOOLS.toArray(String[]::new))
                 .build();
     }
 }
@@ -0,0 +1,34 @@
+package com.aura.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Product Mention Properties
+ *
+ * Product mention detection configured under app.catalog.mentions.*
+ * Product names and IDs come from the live catalog; aliases are the generic terms
+ * customers use for a product (e.g. "headphones" for Aura Harmony), keyed by product ID.
+ * Aliases of products that are not in the catalog are ignored.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.catalog.mentions")
+@Data
+public class ProductMentionProperties {
+
+    /**
+     * Product ID → aliases
+     */
+    private Map<String, List<String>> aliases = new LinkedHashMap<>();
+
+    /**
+     * Route messages that name a product (full name or ID) and contain no order terms straight to
+     * the product expert; alias matches are only passed to the intent classifier as a hint
+     */
+    private boolean intentFastPath = true;
+}
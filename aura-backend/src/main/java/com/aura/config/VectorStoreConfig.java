@@ -1,6 +1,6 @@
 package com.aura.config;
 
-import org.springframework.ai.embedding.EmbeddingModel;
+import com.aura.service.ai.EmbeddingBatchDispatcher;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -12,6 +12,8 @@ import java.io.File;
  * Vector Store Configuration
  * 
  * Configures SimpleVectorStore for RAG (Retrieval Augmented Generation).
+ * Query embeddings go through EmbeddingBatchDispatcher so that concurrent
+ * similarity searches share batched embedding calls.
  */
 @Configuration
 public class VectorStoreConfig {
@@ -20,8 +22,8 @@ public class VectorStoreConfig {
     private String vectorStoreFilePath;
 
     @Bean
-    public SimpleVectorStore vectorStore(EmbeddingModel embeddingModel) {
-        SimpleVectorStore vectorStore = SimpleVectorStore.builder(embeddingModel).build();
+    public SimpleVectorStore vectorStore(EmbeddingBatchDispatcher embeddingBatchDispatcher) {
+        SimpleVectorStore vectorStore = SimpleVectorStore.builder(embeddingBatchDispatcher.asEmbeddingModel()).build();
         File vectorStoreFile = new File(vectorStoreFilePath);
 
         // Create parent directory if it doesn't exist
@@ -6,7 +6,14 @@ import com.aura.model.dto.ChatResponse;
 import com.aura.service.ai.AIAgentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+
+import java.io.IOException;
+import java.util.Map;
 
 /**
  * AI Controller
@@ -24,8 +31,14 @@ import org.springframework.web.bind.annotation.*;
 @Slf4j
 public class AIController {
 
+    // Upper bound for one page of chat history
+    private static final int MAX_HISTORY_LIMIT = 200;
+
     private final AIAgentService aiAgentService;
 
+    @Value("${app.ai.stream.timeout-ms:120000}")
+    private long streamTimeoutMs;
+
     /**
      * POST /api/ai/chat - Send message to AI agent
      * 发送消息给AI助手
@@ -72,18 +85,108 @@ public class AIController {
         }
     }
 
+    /**
+     * GET/POST /api/ai/chat/stream - Stream AI response as Server-Sent Events
+     * 流式返回AI响应（SSE）
+     *
+     * Events:
+     * - token: {"content": "..."} for each generated chunk
+     * - done:  ChatResponse with the full message
+     * - error: {"message": "..."} if processing fails
+     *
+     * @param body      Chat request (POST)
+     * @param message   Message (GET)
+     * @param sessionId Session ID (GET)
+     * @return SSE emitter
+     */
+    @RequestMapping(value = "/chat/stream", method = { RequestMethod.GET, RequestMethod.POST },
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody(required = false) ChatRequest body,
+            @RequestParam(required = false) String message,
+            @RequestParam(required = false) String sessionId) {
+        ChatRequest request = body != null ? body : new ChatRequest();
+        if (body == null) {
+            request.setMessage(message);
+            request.setSessionId(sessionId);
+        }
+
+        // 1. Validate and prepare session ID
+        if (request.getSessionId() == null || request.getSessionId().trim().isEmpty()) {
+            request.setSessionId(java.util.UUID.randomUUID().toString());
+            log.info("Generated new session ID: {}", request.getSessionId());
+        }
+        String resolvedSessionId = request.getSessionId();
+
+        log.info("Received streaming chat request: sessionId={}, message='{}'",
+                resolvedSessionId, request.getMessage());
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        StringBuilder fullResponse = new StringBuilder();
+
+        try {
+            // 2. Subscribe to the token stream and forward each chunk as an SSE event
+            Disposable subscription = aiAgentService.streamMessage(request).subscribe(
+                    chunk -> {
+                        fullResponse.append(chunk);
+                        sendEvent(emitter, "token", Map.of("content", chunk));
+                    },
+                    error -> {
+                        log.error("Streaming chat error: sessionId={}, error={}",
+                                resolvedSessionId, error.getMessage(), error);
+                        sendEvent(emitter, "error",
+                                Map.of("message", "AI service temporarily unavailable. Please try again later."));
+                        emitter.complete();
+                    },
+                    () -> {
+                        ChatResponse response = new ChatResponse();
+                        response.setSessionId(resolvedSessionId);
+                        response.setMessage(fullResponse.toString());
+                        response.setTimestamp(java.time.LocalDateTime.now().toString());
+                        sendEvent(emitter, "done", response);
+                        emitter.complete();
+                    });
+
+            // 3. Stop generating if the client disconnects or the stream times out
+            emitter.onTimeout(subscription::dispose);
+            emitter.onError(e -> subscription.dispose());
+
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid streaming chat request: sessionId={}, error={}", resolvedSessionId, e.getMessage());
+            sendEvent(emitter, "error", Map.of("message", "Invalid request: " + e.getMessage()));
+            emitter.complete();
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Send a named SSE event, ignoring clients that have already disconnected
+     */
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Failed to send SSE event '{}': {}", name, e.getMessage());
+        }
+    }
+
     /**
      * GET /api/ai/history/{sessionId} - Get chat history
      * 获取对话历史
      * 
      * @param sessionId Session ID
-     * @return Chat history for the session
+     * @param limit     Maximum number of messages (default 100, clamped to 1..200)
+     * @param beforeId  Return messages older than this message ID (keyset pagination)
+     * @return Chat history for the session (chronological order)
      */
     @GetMapping("/history/{sessionId}")
-    public ApiResponse<java.util.List<ChatResponse>> getChatHistory(@PathVariable String sessionId) {
+    public ApiResponse<java.util.List<ChatResponse>> getChatHistory(@PathVariable String sessionId,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) Long beforeId) {
         try {
             log.info("Retrieving chat history for session: {}", sessionId);
-            java.util.List<ChatResponse> history = aiAgentService.getChatHistory(sessionId);
+            int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT));
+            java.util.List<ChatResponse> history = aiAgentService.getChatHistory(sessionId, pageSize, beforeId);
             return ApiResponse.success(history);
 
         } catch (Exception e) {
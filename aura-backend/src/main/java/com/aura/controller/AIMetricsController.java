@@ -0,0 +1,189 @@
+package com.aura.controller;
+
+import com.aura.service.InventoryReservationService;
+import com.aura.service.ProductCatalog;
+import com.aura.service.ProductEmbeddingIndex;
+import com.aura.service.ProductResponseCache;
+import com.aura.service.ai.AgentChatService;
+import com.aura.service.ai.ChatHistoryWriteBehindService;
+import com.aura.service.ai.ConversationSummaryService;
+import com.aura.service.ai.EmbeddingBatchDispatcher;
+import com.aura.service.ai.PromptBudgetService;
+import com.aura.service.ai.SemanticAnswerCache;
+import com.aura.service.ai.SemanticMemoryIndexer;
+import com.aura.service.ai.SessionHistoryCache;
+import com.aura.service.ai.SingleFlightService;
+import com.aura.service.ai.SpeculativeRetrievalService;
+import com.aura.service.ai.ToolTokenReportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * AI Metrics Controller
+ * AI性能指标控制器
+ *
+ * 暴露AI链路各优化组件的运行统计，便于调优
+ */
+@RestController
+@RequestMapping("/api/admin/ai-metrics")
+@RequiredArgsConstructor
+@Slf4j
+public class AIMetricsController {
+
+    private final SpeculativeRetrievalService speculativeRetrievalService;
+    private final ToolTokenReportService toolTokenReportService;
+    private final AgentChatService agentChatService;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final SingleFlightService singleFlightService;
+    private final EmbeddingBatchDispatcher embeddingBatchDispatcher;
+    private final ChatHistoryWriteBehindService chatHistoryWriteBehindService;
+    private final SemanticMemoryIndexer semanticMemoryIndexer;
+    private final PromptBudgetService promptBudgetService;
+    private final SessionHistoryCache sessionHistoryCache;
+    private final ConversationSummaryService conversationSummaryService;
+    private final ProductCatalog productCatalog;
+    private final ProductResponseCache productResponseCache;
+    private final ProductEmbeddingIndex productEmbeddingIndex;
+    private final InventoryReservationService inventoryReservationService;
+
+    /**
+     * 推测式检索统计
+     * GET /api/admin/ai-metrics/speculative-retrieval
+     */
+    @GetMapping("/speculative-retrieval")
+    public ResponseEntity<Map<String, Object>> getSpeculativeRetrievalStats() {
+        return ResponseEntity.ok(speculativeRetrievalService.getStats());
+    }
+
+    /**
+     * 按Agent注册工具后每种调用类型节省的Prompt Token
+     * GET /api/admin/ai-metrics/tool-tokens
+     */
+    @GetMapping("/tool-tokens")
+    public ResponseEntity<Map<String, Object>> getToolTokenReport() {
+        return ResponseEntity.ok(toolTokenReportService.getReport());
+    }
+
+    /**
+     * 每个Agent的模型配置、调用耗时和Token用量
+     * GET /api/admin/ai-metrics/agents
+     */
+    @GetMapping("/agents")
+    public ResponseEntity<Map<String, Object>> getAgentStats() {
+        return ResponseEntity.ok(agentChatService.getStats());
+    }
+
+    /**
+     * 语义答案缓存命中率与节省耗时
+     * GET /api/admin/ai-metrics/answer-cache
+     */
+    @GetMapping("/answer-cache")
+    public ResponseEntity<Map<String, Object>> getAnswerCacheStats() {
+        return ResponseEntity.ok(semanticAnswerCache.getStats());
+    }
+
+    /**
+     * 并发相同请求的合并统计（向量化、检索、回答生成）
+     * GET /api/admin/ai-metrics/single-flight
+     */
+    @GetMapping("/single-flight")
+    public ResponseEntity<Map<String, Object>> getSingleFlightStats() {
+        return ResponseEntity.ok(singleFlightService.getStats());
+    }
+
+    /**
+     * 查询向量化微批处理统计（平均批大小等）
+     * GET /api/admin/ai-metrics/embedding-batch
+     */
+    @GetMapping("/embedding-batch")
+    public ResponseEntity<Map<String, Object>> getEmbeddingBatchStats() {
+        return ResponseEntity.ok(embeddingBatchDispatcher.getStats());
+    }
+
+    /**
+     * 对话记录异步批量持久化统计
+     * GET /api/admin/ai-metrics/chat-persistence
+     */
+    @GetMapping("/chat-persistence")
+    public ResponseEntity<Map<String, Object>> getChatPersistenceStats() {
+        return ResponseEntity.ok(chatHistoryWriteBehindService.getStats());
+    }
+
+    /**
+     * 语义记忆索引统计（跳过的消息、懒加载次数等）
+     * GET /api/admin/ai-metrics/semantic-memory
+     */
+    @GetMapping("/semantic-memory")
+    public ResponseEntity<Map<String, Object>> getSemanticMemoryStats() {
+        return ResponseEntity.ok(semanticMemoryIndexer.getStats());
+    }
+
+    /**
+     * 会话短期记忆缓存统计（命中率、内存占用、淘汰次数）
+     * GET /api/admin/ai-metrics/session-cache
+     */
+    @GetMapping("/session-cache")
+    public ResponseEntity<Map<String, Object>> getSessionCacheStats() {
+        return ResponseEntity.ok(sessionHistoryCache.getStats());
+    }
+
+    /**
+     * 每个Agent的Prompt Token预算统计（平均Token数、裁剪次数）
+     * GET /api/admin/ai-metrics/prompt-budget
+     */
+    @GetMapping("/prompt-budget")
+    public ResponseEntity<Map<String, Object>> getPromptBudgetStats() {
+        return ResponseEntity.ok(promptBudgetService.getStats());
+    }
+
+    /**
+     * 会话滚动摘要统计（摘要次数、折叠的消息和Token数）
+     * GET /api/admin/ai-metrics/conversation-summary
+     */
+    @GetMapping("/conversation-summary")
+    public ResponseEntity<Map<String, Object>> getConversationSummaryStats() {
+        return ResponseEntity.ok(conversationSummaryService.getStats());
+    }
+
+    /**
+     * 产品目录快照统计（版本、刷新次数、一致性检查）
+     * GET /api/admin/ai-metrics/catalog
+     */
+    @GetMapping("/catalog")
+    public ResponseEntity<Map<String, Object>> getCatalogStats() {
+        return ResponseEntity.ok(productCatalog.getStats());
+    }
+
+    /**
+     * 产品接口响应缓存统计（命中率、条目数、失效次数）
+     * GET /api/admin/ai-metrics/product-responses
+     */
+    @GetMapping("/product-responses")
+    public ResponseEntity<Map<String, Object>> getProductResponseCacheStats() {
+        return ResponseEntity.ok(productResponseCache.getStats());
+    }
+
+    /**
+     * 产品语义索引统计（产品数、向量维度、搜索和向量化次数）
+     * GET /api/admin/ai-metrics/product-embeddings
+     */
+    @GetMapping("/product-embeddings")
+    public ResponseEntity<Map<String, Object>> getProductEmbeddingStats() {
+        return ResponseEntity.ok(productEmbeddingIndex.getStats());
+    }
+
+    /**
+     * 库存预留引擎统计（可用库存、预留/确认/释放次数、回写情况）
+     * GET /api/admin/ai-metrics/inventory
+     */
+    @GetMapping("/inventory")
+    public ResponseEntity<Map<String, Object>> getInventoryStats() {
+        return ResponseEntity.ok(inventoryReservationService.getStats());
+    }
+}
@@ -1,12 +1,20 @@
 package com.aura.controller;
 
 import com.aura.model.dto.ApiResponse;
+import com.aura.model.dto.ProductPage;
 import com.aura.model.entity.Product;
+import com.aura.service.ProductResponseCache;
 import com.aura.service.ProductService;
+import com.aura.service.ProductSuggestIndex;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Product Controller
@@ -17,46 +25,74 @@ import java.util.List;
 public class ProductController {
 
     private final ProductService productService;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final ProductResponseCache productResponseCache;
 
     /**
      * GET /api/products - Get all products
+     * Served from the pre-serialized response cache; answers If-None-Match with 304
      */
     @GetMapping
-    public ApiResponse<List<Product>> getAllProducts() {
+    public ResponseEntity<?> getAllProducts() {
         try {
-            List<Product> products = productService.getAllProducts();
-            return ApiResponse.success(products);
+            return cached(productResponseCache.allProducts());
         } catch (Exception e) {
-            return ApiResponse.error("Failed to get products: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("Failed to get products: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * GET /api/products/list - Paginated product listing (slim projection)
+     * Filters: category, minPrice, maxPrice, inStock; sort: name | price_asc | price_desc | newest;
+     * pass the returned nextCursor as cursor to fetch the next page
+     */
+    @GetMapping("/list")
+    public ApiResponse<ProductPage> listProducts(@RequestParam(required = false) String category,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "false") boolean inStock,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        try {
+            return ApiResponse.success(
+                    productService.listProducts(category, minPrice, maxPrice, inStock, sort, cursor, size));
+        } catch (Exception e) {
+            return ApiResponse.error("Failed to list products: " + e.getMessage());
         }
     }
 
     /**
      * GET /api/products/{id} - Get product by ID
+     * Served from the pre-serialized response cache; answers If-None-Match with 304
      */
     @GetMapping("/{id}")
-    public ApiResponse<Product> getProductById(@PathVariable String id) {
+    public ResponseEntity<?> getProductById(@PathVariable String id) {
         try {
+            Optional<ProductResponseCache.CachedResponse> cached = productResponseCache.product(id);
+            if (cached.isPresent()) {
+                return cached(cached.get());
+            }
             Product product = productService.getProductById(id);
             if (product == null) {
-                return ApiResponse.error("Product not found");
+                return ResponseEntity.ok(ApiResponse.error("Product not found"));
             }
-            return ApiResponse.success(product);
+            return ResponseEntity.ok(ApiResponse.success(product));
         } catch (Exception e) {
-            return ApiResponse.error("Failed to get product: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("Failed to get product: " + e.getMessage()));
         }
     }
 
     /**
      * GET /api/products/category/{category} - Get products by category
+     * Served from the pre-serialized response cache; answers If-None-Match with 304
      */
     @GetMapping("/category/{category}")
-    public ApiResponse<List<Product>> getProductsByCategory(@PathVariable String category) {
+    public ResponseEntity<?> getProductsByCategory(@PathVariable String category) {
         try {
-            List<Product> products = productService.getProductsByCategory(category);
-            return ApiResponse.success(products);
+            return cached(productResponseCache.productsByCategory(category));
         } catch (Exception e) {
-            return ApiResponse.error("Failed to get products by category: " + e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error("Failed to get products by category: " + e.getMessage()));
         }
     }
 
@@ -72,4 +108,29 @@ public class ProductController {
             return ApiResponse.error("Failed to search products: " + e.getMessage());
         }
     }
+
+    /**
+     * GET /api/products/suggest?q={prefix} - Typeahead suggestions (prefix and typo tolerant)
+     */
+    @GetMapping("/suggest")
+    public ApiResponse<List<ProductSuggestIndex.Suggestion>> suggest(@RequestParam String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        try {
+            return ApiResponse.success(productSuggestIndex.suggest(q, limit));
+        } catch (Exception e) {
+            return ApiResponse.error("Failed to get suggestions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write a cached JSON body with its strong ETag. Spring compares the ETag with
+     * If-None-Match for GET requests and sends 304 without the body when it matches.
+     */
+    private static ResponseEntity<byte[]> cached(ProductResponseCache.CachedResponse response) {
+        return ResponseEntity.ok()
+                .eTag(response.etag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(response.body());
+    }
 }
@@ -11,6 +11,8 @@ public class ChatResponse {
 
     private String message;
     private String sessionId;
+    // Persisted message ID (history only; null until the message is written)
+    private Long messageId;
     private List<String> suggestedProducts;
     private List<SuggestedAction> suggestedActions;
     private String timestamp;
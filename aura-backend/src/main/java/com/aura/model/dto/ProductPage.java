@@ -0,0 +1,13 @@
+package com.aura.model.dto;
+
+import java.util.List;
+
+/**
+ * Product Page DTO
+ * 产品列表分页结果（键集分页）
+ *
+ * @param items      当前页的产品
+ * @param nextCursor 下一页游标，没有更多数据时为 null
+ */
+public record ProductPage(List<ProductSummary> items, String nextCursor) {
+}
@@ -0,0 +1,19 @@
+package com.aura.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Product Summary DTO
+ * 产品列表投影（不含描述、特性等大字段）
+ */
+public record ProductSummary(
+        String id,
+        String name,
+        String tagline,
+        BigDecimal price,
+        String category,
+        String imageUrl,
+        Integer stock,
+        LocalDateTime createdAt) {
+}
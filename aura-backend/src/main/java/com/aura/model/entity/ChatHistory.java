@@ -14,7 +14,9 @@ import java.util.Map;
  * Chat History Entity
  */
 @Entity
-@Table(name = "chat_history")
+@Table(name = "chat_history", indexes = {
+        @Index(name = "idx_session_created", columnList = "session_id, created_at")
+})
 @Data
 public class ChatHistory {
 
@@ -50,7 +52,9 @@ public class ChatHistory {
 
     @PrePersist
     protected void onCreate() {
-        createdAt = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
         convertContextDataToJson();
     }
 
@@ -0,0 +1,41 @@
+package com.aura.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Conversation Summary Entity
+ * 会话滚动摘要（较早的对话折叠为摘要，最近的对话原样保留）
+ */
+@Entity
+@Table(name = "conversation_summary")
+@Data
+public class ConversationSummary {
+
+    @Id
+    @Column(name = "session_id", length = 100)
+    private String sessionId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String summary;
+
+    /**
+     * created_at of the last message folded into the summary (second precision, like chat_history)
+     */
+    @Column(name = "covered_until", nullable = false)
+    private LocalDateTime coveredUntil;
+
+    @Column(name = "covered_messages", nullable = false)
+    private int coveredMessages;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
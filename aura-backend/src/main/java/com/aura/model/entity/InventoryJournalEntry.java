@@ -0,0 +1,39 @@
+package com.aura.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Inventory Journal Entity
+ * 库存变化日志（库存预留引擎在订单事务内写入，回写 products.stock 后删除）
+ */
+@Entity
+@Table(name = "inventory_journal")
+@Data
+public class InventoryJournalEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false, length = 50)
+    private String productId;
+
+    /**
+     * Stock change (negative = deducted by an order, positive = restored by a cancellation)
+     */
+    @Column(nullable = false)
+    private int delta;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
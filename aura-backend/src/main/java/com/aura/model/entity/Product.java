@@ -11,7 +11,13 @@ import java.time.LocalDateTime;
  * Represents a product in the Aura catalog.
  */
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_category", columnList = "category"),
+        @Index(name = "idx_name", columnList = "name"),
+        @Index(name = "idx_price", columnList = "price"),
+        @Index(name = "idx_category_price", columnList = "category, price"),
+        @Index(name = "idx_created_at", columnList = "created_at")
+})
 @Data
 public class Product {
 
@@ -0,0 +1,12 @@
+package com.aura.model.event;
+
+/**
+ * Manual Index Changed Event
+ * 产品手册向量索引变更事件
+ *
+ * Published when documents are added to or removed from the manual vector store.
+ *
+ * @param reason Short description of the change (for logging)
+ */
+public record ManualIndexChangedEvent(String reason) {
+}
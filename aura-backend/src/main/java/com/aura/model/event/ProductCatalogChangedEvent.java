@@ -0,0 +1,16 @@
+package com.aura.model.event;
+
+import java.util.Set;
+
+/**
+ * Product Catalog Changed Event
+ * 产品目录快照更新事件
+ *
+ * Published by ProductCatalog after a new snapshot has been swapped in,
+ * so indexes built from the snapshot can be updated incrementally.
+ *
+ * @param version    Version of the new snapshot
+ * @param productIds IDs of added, changed or removed products
+ */
+public record ProductCatalogChangedEvent(long version, Set<String> productIds) {
+}
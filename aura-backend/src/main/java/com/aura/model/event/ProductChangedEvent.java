@@ -0,0 +1,13 @@
+package com.aura.model.event;
+
+/**
+ * Product Changed Event
+ * 产品数据变更事件（库存、目录信息等）
+ *
+ * Published by ProductService after a product record is modified,
+ * so caches and indexes derived from the catalog can be refreshed.
+ *
+ * @param productId ID of the changed product
+ */
+public record ProductChangedEvent(String productId) {
+}
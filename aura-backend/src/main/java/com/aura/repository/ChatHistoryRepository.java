@@ -1,8 +1,10 @@
 package com.aura.repository;
 
 import com.aura.model.entity.ChatHistory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -21,9 +23,21 @@ public interface ChatHistoryRepository extends JpaRepository<ChatHistory, Long>
     List<ChatHistory> findBySessionIdOrderByCreatedAtAsc(String sessionId);
 
     /**
-     * Find recent chat history by session ID
+     * Find the most recent chat history of a session (newest first)
+     * First page of keyset pagination, served by idx_session_created
      */
-    List<ChatHistory> findTop10BySessionIdOrderByCreatedAtDesc(String sessionId);
+    @Query("SELECT h FROM ChatHistory h WHERE h.sessionId = :sessionId ORDER BY h.createdAt DESC, h.id DESC")
+    List<ChatHistory> findRecentBySessionId(@Param("sessionId") String sessionId, Pageable pageable);
+
+    /**
+     * Find chat history older than the (createdAt, id) cursor (newest first)
+     * Next page of keyset pagination: seeks on idx_session_created instead of using OFFSET
+     */
+    @Query("SELECT h FROM ChatHistory h WHERE h.sessionId = :sessionId"
+            + " AND (h.createdAt < :createdAt OR (h.createdAt = :createdAt AND h.id < :id))"
+            + " ORDER BY h.createdAt DESC, h.id DESC")
+    List<ChatHistory> findBySessionIdBefore(@Param("sessionId") String sessionId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
 
     /**
      * Delete chat history by session ID
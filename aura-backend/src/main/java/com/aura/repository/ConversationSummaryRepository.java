@@ -0,0 +1,12 @@
+package com.aura.repository;
+
+import com.aura.model.entity.ConversationSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Conversation Summary Repository
+ */
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, String> {
+}
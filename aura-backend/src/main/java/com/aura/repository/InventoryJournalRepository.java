@@ -0,0 +1,33 @@
+package com.aura.repository;
+
+import com.aura.model.entity.InventoryJournalEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Inventory Journal Repository
+ */
+@Repository
+public interface InventoryJournalRepository extends JpaRepository<InventoryJournalEntry, Long> {
+
+    /**
+     * Find all journal entries in write order
+     */
+    List<InventoryJournalEntry> findAllByOrderByIdAsc();
+
+    /**
+     * Sum of the unflushed stock changes per product (productId, sum)
+     */
+    @Query("SELECT j.productId, SUM(j.delta) FROM InventoryJournalEntry j GROUP BY j.productId")
+    List<Object[]> sumDeltasByProduct();
+
+    /**
+     * Sum of the unflushed stock changes of a product
+     */
+    @Query("SELECT COALESCE(SUM(j.delta), 0) FROM InventoryJournalEntry j WHERE j.productId = :productId")
+    long sumDeltaByProductId(@Param("productId") String productId);
+}
@@ -1,9 +1,15 @@
 package com.aura.repository;
 
+import com.aura.model.dto.ProductSummary;
 import com.aura.model.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -12,6 +18,20 @@ import java.util.List;
 @Repository
 public interface ProductRepository extends JpaRepository<Product, String> {
 
+    /**
+     * Slim list projection (no description, long description or features)
+     */
+    String SUMMARY_SELECT = "SELECT new com.aura.model.dto.ProductSummary("
+            + "p.id, p.name, p.tagline, p.price, p.category, p.imageUrl, p.stock, p.createdAt) FROM Product p";
+
+    /**
+     * Optional listing filters (a null parameter disables its filter)
+     */
+    String LISTING_FILTERS = " WHERE (:category IS NULL OR p.category = :category)"
+            + " AND (:minPrice IS NULL OR p.price >= :minPrice)"
+            + " AND (:maxPrice IS NULL OR p.price <= :maxPrice)"
+            + " AND (:inStock = false OR p.stock > 0)";
+
     /**
      * Find products by category
      */
@@ -26,4 +46,52 @@ public interface ProductRepository extends JpaRepository<Product, String> {
      * Find products with stock greater than zero
      */
     List<Product> findByStockGreaterThan(Integer stock);
+
+    /**
+     * List products ordered by name, after the optional (name, id) cursor
+     * Keyset pagination served by idx_name
+     */
+    @Query(SUMMARY_SELECT + LISTING_FILTERS
+            + " AND (:name IS NULL OR p.name > :name OR (p.name = :name AND p.id > :id))"
+            + " ORDER BY p.name ASC, p.id ASC")
+    List<ProductSummary> listByName(@Param("category") String category,
+            @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+            @Param("inStock") boolean inStock, @Param("name") String name, @Param("id") String id,
+            Pageable pageable);
+
+    /**
+     * List products by ascending price, after the optional (price, id) cursor
+     * Keyset pagination served by idx_price / idx_category_price
+     */
+    @Query(SUMMARY_SELECT + LISTING_FILTERS
+            + " AND (:price IS NULL OR p.price > :price OR (p.price = :price AND p.id > :id))"
+            + " ORDER BY p.price ASC, p.id ASC")
+    List<ProductSummary> listByPriceAsc(@Param("category") String category,
+            @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+            @Param("inStock") boolean inStock, @Param("price") BigDecimal price, @Param("id") String id,
+            Pageable pageable);
+
+    /**
+     * List products by descending price, after the optional (price, id) cursor
+     * Keyset pagination served by idx_price / idx_category_price (backward scan)
+     */
+    @Query(SUMMARY_SELECT + LISTING_FILTERS
+            + " AND (:price IS NULL OR p.price < :price OR (p.price = :price AND p.id < :id))"
+            + " ORDER BY p.price DESC, p.id DESC")
+    List<ProductSummary> listByPriceDesc(@Param("category") String category,
+            @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+            @Param("inStock") boolean inStock, @Param("price") BigDecimal price, @Param("id") String id,
+            Pageable pageable);
+
+    /**
+     * List newest products first, after the optional (createdAt, id) cursor
+     * Keyset pagination served by idx_created_at (backward scan)
+     */
+    @Query(SUMMARY_SELECT + LISTING_FILTERS
+            + " AND (:createdAt IS NULL OR p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id))"
+            + " ORDER BY p.createdAt DESC, p.id DESC")
+    List<ProductSummary> listByNewest(@Param("category") String category,
+            @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+            @Param("inStock") boolean inStock, @Param("createdAt") LocalDateTime createdAt, @Param("id") String id,
+            Pageable pageable);
 }
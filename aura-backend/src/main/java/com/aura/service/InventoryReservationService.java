@@ -0,0 +1,519 @@
+package com.aura.service;
+
+import com.aura.model.entity.InventoryJournalEntry;
+import com.aura.model.entity.Product;
+import com.aura.repository.InventoryJournalRepository;
+import com.aura.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 库存预留引擎（内存计数 + 异步回写）
+ *
+ * 职责：
+ * 1. 在内存中保存每个产品的可用库存，计数器按 stripes 分段（CAS 无锁预留/释放），
+ *    同一热门产品的并发下单分散到不同分段，不再全部排队等待 products 表的同一行锁
+ * 2. 预留：一次预留订单的全部产品（全部成功或全部失败），返回带过期时间的预留令牌
+ * 3. 确认 / 释放：库存变化在订单事务内写入 inventory_journal（与订单一起提交或回滚），
+ *    事务提交后确认，回滚后释放；绑定到事务的预留在事务结束前不会过期，
+ *    超过 reservation-ttl 仍未确认的其他预留由后台自动释放
+ * 4. 回写：后台按 flush-interval 把日志中的变化量按产品合并后写入 products.stock
+ *    （ProductService.applyStockDeltas，一个产品一条 UPDATE），并在同一事务内删除已回写的日志
+ * 5. 启动时从数据库加载所有产品的库存（products.stock + 未回写的日志），之后新增的产品在首次使用时加载
+ *
+ * 可用库存 = 数据库库存 + 未回写的日志 - 未确认的预留，计数器任何时候都不会小于 0。
+ * 已提交订单的扣减记录在日志中，进程崩溃后重启时计入库存，不会丢失。
+ * 注意：products.stock（以及基于它的目录快照、产品接口响应）最多落后本引擎一个 flush-interval，
+ * 需要实时库存的地方调用 available()；绕过本服务直接修改 products.stock 的操作需要重启
+ * （或关闭 app.inventory.enabled）才能生效。
+ *
+ * 仅支持单实例部署：可用库存只保存在本进程内存中，多个实例各自持有一份计数器，彼此看不到对方的预留，
+ * 会导致超卖。因此默认关闭（app.inventory.enabled=false，下单直接条件更新数据库），
+ * 只有确定只运行一个后端实例时才开启。
+ */
+@Service
+@Slf4j
+public class InventoryReservationService {
+
+    private final ProductRepository productRepository;
+    private final ProductService productService;
+    private final ProductCatalog productCatalog;
+    private final InventoryJournalRepository journalRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int stripes;
+    private final Duration reservationTtl;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, StripedCounter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Hold> reservations = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    public InventoryReservationService(ProductRepository productRepository,
+            ProductService productService,
+            ProductCatalog productCatalog,
+            InventoryJournalRepository journalRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${app.inventory.enabled:false}") boolean enabled,
+            @Value("${app.inventory.stripes:8}") int stripes,
+            @Value("${app.inventory.reservation-ttl:10m}") Duration reservationTtl,
+            @Value("${app.inventory.flush-interval:1s}") Duration flushInterval,
+            @Value("${app.inventory.sweep-interval:5s}") Duration sweepInterval) {
+        this.productRepository = productRepository;
+        this.productService = productService;
+        this.productCatalog = productCatalog;
+        this.journalRepository = journalRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.stripes = Math.max(1, stripes);
+        this.reservationTtl = reservationTtl;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::flush,
+                    flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(this::expireReservations,
+                    sweepInterval.toMillis(), sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 启动时从数据库加载库存（products.stock + 上次运行未回写的日志）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        log.warn("In-memory inventory engine enabled: stock counters are per process, "
+                + "run a single backend instance only (app.inventory.enabled=false for multi-instance deployments)");
+        // One transaction: the stock and the journal are read from the same snapshot, not across a flush
+        Integer loaded = transactionTemplate.execute(status -> {
+            Map<String, Integer> journal = new TreeMap<>();
+            for (Object[] row : journalRepository.sumDeltasByProduct()) {
+                journal.put((String) row[0], ((Number) row[1]).intValue());
+            }
+            int count = 0;
+            for (Product product : productRepository.findAll()) {
+                int stock = stockOf(product) + journal.getOrDefault(product.getId(), 0);
+                if (counters.putIfAbsent(product.getId(), new StripedCounter(stripes, stock)) == null) {
+                    count++;
+                }
+            }
+            if (!journal.isEmpty()) {
+                log.info("Inventory journal holds unflushed changes of {} products: {}", journal.size(), journal);
+            }
+            return count;
+        });
+        log.info("Inventory reservation engine loaded stock of {} products ({} stripes per product)",
+                loaded, stripes);
+    }
+
+    /**
+     * 查询可用库存（未启用时读取数据库）
+     *
+     * @throws EntityNotFoundException 如果产品不存在
+     */
+    public int available(String productId) {
+        if (!enabled) {
+            return stockOf(productService.getProductById(productId));
+        }
+        return counter(productId).sum();
+    }
+
+    /**
+     * 查询目录中产品的可用库存（未启用时直接使用产品对象的库存，不访问数据库）
+     */
+    public int available(Product product) {
+        if (!enabled) {
+            return stockOf(product);
+        }
+        try {
+            return counter(product.getId()).sum();
+        } catch (EntityNotFoundException e) {
+            // Deleted since the caller's snapshot was taken
+            return stockOf(product);
+        }
+    }
+
+    /**
+     * 预留订单的全部产品（全部成功或全部失败）
+     *
+     * @param quantities 产品ID → 数量（正数）
+     * @return 预留令牌，需要 confirm 或 release（也可用 completeWithTransaction 绑定到当前事务）
+     * @throws IllegalArgumentException 如果数量无效或任一产品库存不足
+     * @throws EntityNotFoundException 如果任一产品不存在
+     */
+    public Reservation reserve(Map<String, Integer> quantities) {
+        if (!enabled) {
+            throw new IllegalStateException("Inventory reservation engine is disabled");
+        }
+        if (quantities == null || quantities.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to reserve");
+        }
+        quantities.forEach((productId, quantity) -> {
+            if (!StringUtils.hasText(productId) || quantity == null || quantity <= 0) {
+                throw new IllegalArgumentException("Invalid reservation: " + productId + " x " + quantity);
+            }
+        });
+
+        Map<String, Integer> items = new TreeMap<>(quantities);
+        String shortage = acquireAll(items);
+        if (shortage != null) {
+            rejected.increment();
+            throw new IllegalArgumentException("Insufficient stock for product: " + productName(shortage));
+        }
+
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(), Map.copyOf(items),
+                Instant.now().plus(reservationTtl));
+        reservations.put(reservation.token(), new Hold(reservation, false));
+        reserved.increment();
+        log.debug("Reserved {} (token {})", items, reservation.token());
+        return reservation;
+    }
+
+    /**
+     * 确认预留：库存正式扣减，立即写入日志（等待回写数据库）
+     *
+     * 用于没有事务的调用方；在事务内请使用 completeWithTransaction（日志随事务提交或回滚）。
+     * 预留已过期被释放时重新预留，库存已被其他订单占用则确认失败。
+     *
+     * @throws IllegalStateException 如果预留已过期且库存不足
+     */
+    public void confirm(Reservation reservation) {
+        if (reservations.remove(reservation.token()) == null) {
+            String shortage = acquireAll(reservation.items());
+            if (shortage != null) {
+                rejected.increment();
+                throw new IllegalStateException("Reservation " + reservation.token()
+                        + " expired and stock is no longer available for product: " + productName(shortage));
+            }
+            log.warn("Confirmed expired reservation {} after reserving {} again", reservation.token(),
+                    reservation.items());
+        }
+        try {
+            journal(reservation.items(), -1);
+        } catch (RuntimeException e) {
+            reservation.items().forEach((productId, quantity) -> counter(productId).add(quantity));
+            released.increment();
+            throw e;
+        }
+        confirmed.increment();
+    }
+
+    /**
+     * 释放预留（订单失败），库存立即可用
+     */
+    public void release(Reservation reservation) {
+        if (reservations.remove(reservation.token()) != null) {
+            reservation.items().forEach((productId, quantity) -> counter(productId).add(quantity));
+            released.increment();
+        }
+    }
+
+    /**
+     * 把预留绑定到当前事务：扣减在事务内写入日志，提交后确认、回滚后释放；没有活动事务时立即确认
+     *
+     * 绑定后的预留在事务结束前不会过期。预留在绑定前已过期时重新预留。
+     *
+     * @throws IllegalArgumentException 如果预留已过期且库存不足（事务应回滚）
+     */
+    public void completeWithTransaction(Reservation reservation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            confirm(reservation);
+            return;
+        }
+        String token = reservation.token();
+        if (reservations.computeIfPresent(token, (key, hold) -> new Hold(hold.reservation(), true)) == null) {
+            String shortage = acquireAll(reservation.items());
+            if (shortage != null) {
+                rejected.increment();
+                throw new IllegalArgumentException("Insufficient stock for product: " + productName(shortage));
+            }
+            reservations.put(token, new Hold(reservation, true));
+        }
+        // Registered before the journal write, so a failed write is still released on rollback
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    reservations.remove(token);
+                    confirmed.increment();
+                } else {
+                    release(reservation);
+                }
+            }
+        });
+        journal(reservation.items(), -1);
+    }
+
+    /**
+     * 增加库存（取消订单时恢复）：在当前事务内写入日志，事务提交后可用
+     *
+     * @param quantities 产品ID → 数量（正数）
+     */
+    public void restock(Map<String, Integer> quantities) {
+        journal(quantities, 1);
+        Runnable apply = () -> quantities.forEach((productId, quantity) -> counter(productId).add(quantity));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply.run();
+            }
+        });
+    }
+
+    /**
+     * 把日志中的变化量按产品合并写入数据库，并在同一事务内删除这些日志（失败时回滚，下次重试）
+     *
+     * 只删除本次读取到的日志：读取之后提交的日志留到下次回写。
+     */
+    public void flush() {
+        try {
+            Integer rows = transactionTemplate.execute(status -> {
+                List<InventoryJournalEntry> entries = journalRepository.findAllByOrderByIdAsc();
+                if (entries.isEmpty()) {
+                    return 0;
+                }
+                Map<String, Integer> deltas = new TreeMap<>();
+                entries.forEach(entry -> deltas.merge(entry.getProductId(), entry.getDelta(), Integer::sum));
+                deltas.values().removeIf(delta -> delta == 0);
+                productService.applyStockDeltas(deltas);
+                journalRepository.deleteAllByIdInBatch(entries.stream().map(InventoryJournalEntry::getId).toList());
+                return deltas.size();
+            });
+            if (rows != null && rows > 0) {
+                flushes.increment();
+                flushedRows.add(rows);
+            }
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.error("Failed to write inventory journal to products, will retry: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 释放超时未确认的预留（绑定到事务的预留不过期）
+     */
+    void expireReservations() {
+        Instant now = Instant.now();
+        for (Hold hold : reservations.values()) {
+            Reservation reservation = hold.reservation();
+            // remove(key, value) fails once the hold has been bound (replaced) in the meantime
+            if (!hold.bound() && reservation.expiresAt().isBefore(now)
+                    && reservations.remove(reservation.token(), hold)) {
+                reservation.items().forEach((productId, quantity) -> counter(productId).add(quantity));
+                expired.increment();
+                log.warn("Reservation {} expired, released {}", reservation.token(), reservation.items());
+            }
+        }
+    }
+
+    /**
+     * 预留全部产品（全部成功或全部失败）
+     *
+     * @return 库存不足的产品ID，全部预留成功时返回 null
+     */
+    private String acquireAll(Map<String, Integer> items) {
+        List<Map.Entry<String, Integer>> acquired = new ArrayList<>();
+        for (Map.Entry<String, Integer> item : new TreeMap<>(items).entrySet()) {
+            if (!counter(item.getKey()).tryAcquire(item.getValue())) {
+                acquired.forEach(done -> counter(done.getKey()).add(done.getValue()));
+                return item.getKey();
+            }
+            acquired.add(item);
+        }
+        return null;
+    }
+
+    /**
+     * 写入库存变化日志（有活动事务时随事务提交）
+     */
+    private void journal(Map<String, Integer> quantities, int sign) {
+        List<InventoryJournalEntry> entries = new ArrayList<>();
+        new TreeMap<>(quantities).forEach((productId, quantity) -> {
+            InventoryJournalEntry entry = new InventoryJournalEntry();
+            entry.setProductId(productId);
+            entry.setDelta(sign * quantity);
+            entries.add(entry);
+        });
+        journalRepository.saveAll(entries);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        if (enabled) {
+            flush();
+        }
+    }
+
+    private StripedCounter counter(String productId) {
+        StripedCounter counter = counters.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        // Product added after startup: stock and journal read in one transaction
+        StripedCounter loaded = transactionTemplate.execute(status -> productRepository.findById(productId)
+                .map(product -> new StripedCounter(stripes,
+                        stockOf(product) + (int) journalRepository.sumDeltaByProductId(productId)))
+                .orElse(null));
+        if (loaded == null) {
+            throw new EntityNotFoundException("Product not found: " + productId);
+        }
+        return counters.computeIfAbsent(productId, key -> loaded);
+    }
+
+    private String productName(String productId) {
+        Product product = productCatalog.snapshot().get(productId);
+        return product != null ? product.getName() : productId;
+    }
+
+    private static int stockOf(Product product) {
+        return product.getStock() != null ? product.getStock() : 0;
+    }
+
+    /**
+     * 获取库存预留统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("products", counters.size());
+        stats.put("active_reservations", reservations.size());
+        stats.put("reserved", reserved.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("confirmed", confirmed.sum());
+        stats.put("released", released.sum());
+        stats.put("expired", expired.sum());
+        stats.put("journal_entries", journalRepository.count());
+        stats.put("flushes", flushes.sum());
+        stats.put("flushed_rows", flushedRows.sum());
+        stats.put("flush_failures", flushFailures.sum());
+        Map<String, Integer> available = new TreeMap<>();
+        counters.forEach((productId, counter) -> available.put(productId, counter.sum()));
+        stats.put("available", available);
+        return stats;
+    }
+
+    /**
+     * 预留令牌
+     *
+     * @param token     令牌
+     * @param items     产品ID → 预留数量
+     * @param expiresAt 过期时间（之后自动释放）
+     */
+    public record Reservation(String token, Map<String, Integer> items, Instant expiresAt) {
+    }
+
+    /**
+     * 未确认的预留
+     *
+     * @param bound 已绑定到事务（事务结束前不过期）
+     */
+    private record Hold(Reservation reservation, boolean bound) {
+    }
+
+    /**
+     * 分段库存计数器
+     *
+     * 预留时从随机分段开始 CAS 扣减；没有单个分段足够时，在计数器锁内把所有分段合并到第一个分段再判断
+     * （只在库存接近耗尽或数量较大时发生）。各分段间隔 PADDING 个 int，避免伪共享。
+     */
+    static final class StripedCounter {
+
+        private static final int PADDING = 16;
+
+        private final int stripes;
+        private final AtomicIntegerArray cells;
+
+        StripedCounter(int stripes, int initial) {
+            this.stripes = stripes;
+            this.cells = new AtomicIntegerArray(stripes * PADDING);
+            for (int i = 0; i < stripes; i++) {
+                cells.set(i * PADDING, initial / stripes + (i == 0 ? initial % stripes : 0));
+            }
+        }
+
+        boolean tryAcquire(int quantity) {
+            int start = ThreadLocalRandom.current().nextInt(stripes);
+            for (int k = 0; k < stripes; k++) {
+                int cell = ((start + k) % stripes) * PADDING;
+                int value = cells.get(cell);
+                while (value >= quantity) {
+                    if (cells.compareAndSet(cell, value, value - quantity)) {
+                        return true;
+                    }
+                    value = cells.get(cell);
+                }
+            }
+            // No single stripe holds enough: gather all stripes into the first one
+            synchronized (this) {
+                int total = 0;
+                for (int i = 0; i < stripes; i++) {
+                    total += cells.getAndSet(i * PADDING, 0);
+                }
+                boolean acquired = total >= quantity;
+                cells.addAndGet(0, acquired ? total - quantity : total);
+                return acquired;
+            }
+        }
+
+        void add(int quantity) {
+            cells.addAndGet(ThreadLocalRandom.current().nextInt(stripes) * PADDING, quantity);
+        }
+
+        int sum() {
+            int total = 0;
+            for (int i = 0; i < stripes; i++) {
+                total += cells.get(i * PADDING);
+            }
+            return total;
+        }
+    }
+}
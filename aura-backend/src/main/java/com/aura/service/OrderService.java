@@ -28,6 +28,7 @@ public class OrderService {
 
     private final OrderRepository orderRepository;
     private final ProductService productService;
+    private final InventoryReservationService inventoryReservationService;
 
     // 订单状态常量（匹配你的Order实体默认值）
     private static final String STATUS_PENDING = "PENDING";
@@ -62,6 +63,12 @@ public class OrderService {
             }
         }
 
+        // 同一产品的数量合并
+        Map<String, Integer> quantities = new HashMap<>();
+        for (OrderRequest.OrderItemRequest itemReq : request.getItems()) {
+            quantities.merge(itemReq.getProductId(), itemReq.getQuantity(), Integer::sum);
+        }
+
         try {
             // 2. 库存校验 + 预查询产品信息
             Map<String, Product> productMap = new HashMap<>();
@@ -73,14 +80,20 @@ public class OrderService {
                 Product product = productService.getProductById(productId);
                 productMap.put(productId, product);
 
-                // 库存校验
-                if (!productService.checkInventory(productId, quantity)) {
+                // 库存校验（启用预留引擎时由下面的预留完成）
+                if (!inventoryReservationService.isEnabled() && !productService.checkInventory(productId, quantity)) {
                     log.warn("Insufficient stock for product {} ({}): current={}, required={}", productId,
                             product.getName(), product.getStock(), quantity);
                     throw new IllegalArgumentException("Insufficient stock for product: " + product.getName());
                 }
             }
 
+            // 预留库存：内存中无锁扣减，事务提交后确认（回写数据库），回滚后释放
+            if (inventoryReservationService.isEnabled()) {
+                InventoryReservationService.Reservation reservation = inventoryReservationService.reserve(quantities);
+                inventoryReservationService.completeWithTransaction(reservation);
+            }
+
             // 3. 构建订单主表对象
             Order order = new Order();
             String orderNumber = generateOrderNumber();
@@ -127,12 +140,10 @@ public class OrderService {
             log.info("Order created successfully: number={}, customer={}, total={}, items={}",
                     orderNumber, request.getCustomerName(), totalAmount, orderItems.size());
 
-            // 6. 扣减产品库存
-            for (OrderRequest.OrderItemRequest itemReq : request.getItems()) {
-                String productId = itemReq.getProductId();
-                int quantity = itemReq.getQuantity();
-                productService.updateStock(productId, -quantity);
-                log.info("Stock deducted for product {}: quantity={}, order={}", productId, quantity, orderNumber);
+            // 6. 扣减产品库存（未启用预留引擎时：一次批量条件更新，任一产品库存不足则整个订单回滚）
+            if (!inventoryReservationService.isEnabled()) {
+                productService.decrementStock(quantities);
+                log.info("Stock deducted for order {}: {}", orderNumber, quantities);
             }
 
             return savedOrder;
@@ -358,13 +369,16 @@ public class OrderService {
         }
 
         try {
+            Map<String, Integer> quantities = new HashMap<>();
             for (OrderItem orderItem : order.getItems()) {
-                String productId = orderItem.getProductId();
-                int quantity = orderItem.getQuantity();
-                productService.updateStock(productId, quantity); // 正数=增加库存
-                log.info("Stock restored for product {}: quantity={}, order={}", productId, quantity,
-                        order.getOrderNumber());
+                quantities.merge(orderItem.getProductId(), orderItem.getQuantity(), Integer::sum);
+            }
+            if (inventoryReservationService.isEnabled()) {
+                inventoryReservationService.restock(quantities);
+            } else {
+                productService.incrementStock(quantities);
             }
+            log.info("Stock restored for order {}: {}", order.getOrderNumber(), quantities);
         } catch (Exception e) {
             log.error("Failed to restore stock for order {}", order.getOrderNumber(), e);
             throw new RuntimeException("Failed to restore stock");
@@ -0,0 +1,306 @@
+package com.aura.service;
+
+import com.aura.model.entity.Product;
+import com.aura.model.event.ProductCatalogChangedEvent;
+import com.aura.model.event.ProductChangedEvent;
+import com.aura.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 产品目录快照
+ *
+ * 职责：
+ * 1. 在内存中保存不可变的产品目录快照（按ID、按分类索引，预计算小写搜索文本）
+ * 2. 读路径（列表、分类、搜索、批量查询）直接读取快照，不再每次 findAll() 全表扫描
+ * 3. 产品写入事务提交后（ProductChangedEvent）增量刷新对应产品，原子替换快照
+ * 4. 定期全量比对数据库（check-interval），发现不一致时替换快照（兜底绕过 ProductService 的写入）
+ * 5. 快照替换后发布 ProductCatalogChangedEvent，供基于目录构建的索引增量更新
+ *
+ * 注意：快照中的 Product 对象是与持久化上下文分离的副本，被所有读者共享，只读，不能修改。
+ * 下单等需要最新库存的写路径仍通过 ProductRepository 读取。
+ * 启用库存预留引擎时快照中的库存最多落后一个 app.inventory.flush-interval，实时可用库存见
+ * InventoryReservationService.available()。
+ */
+@Component
+@Slf4j
+public class ProductCatalog {
+
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ScheduledExecutorService checker;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final Object refreshLock = new Object();
+
+    // Metrics
+    private final LongAdder fullLoads = new LongAdder();
+    private final LongAdder productRefreshes = new LongAdder();
+    private final LongAdder periodicChecks = new LongAdder();
+    private final LongAdder driftDetected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ProductCatalog(ProductRepository productRepository,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${app.catalog.check-interval:60s}") Duration checkInterval) {
+        this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-catalog-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checker.scheduleWithFixedDelay(this::periodicCheck,
+                checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取当前快照（首次调用时从数据库加载）
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = current.get();
+        return snapshot != null ? snapshot : reload();
+    }
+
+    /**
+     * 产品写入事务提交后刷新该产品
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        try {
+            refreshProduct(event.productId());
+        } catch (Exception e) {
+            // The periodic check repairs the snapshot later
+            failures.increment();
+            log.error("Failed to refresh product {} in catalog snapshot", event.productId(), e);
+        }
+    }
+
+    /**
+     * 增量刷新单个产品（新增、修改或删除）
+     */
+    public void refreshProduct(String productId) {
+        synchronized (refreshLock) {
+            Snapshot snapshot = current.get();
+            if (snapshot == null) {
+                reload();
+                return;
+            }
+
+            Optional<Product> fresh = productRepository.findById(productId).map(ProductCatalog::detachedCopy);
+            List<Product> products = new ArrayList<>(snapshot.products().size() + 1);
+            boolean replaced = false;
+            for (Product product : snapshot.products()) {
+                if (!product.getId().equals(productId)) {
+                    products.add(product);
+                } else if (fresh.isPresent()) {
+                    products.add(fresh.get());
+                    replaced = true;
+                }
+            }
+            if (!replaced) {
+                fresh.ifPresent(products::add);
+            }
+
+            productRefreshes.increment();
+            swap(snapshot, products, Set.of(productId));
+        }
+    }
+
+    /**
+     * 全量加载并与当前快照比对，有变化时替换
+     *
+     * @return 当前快照
+     */
+    public Snapshot reload() {
+        synchronized (refreshLock) {
+            List<Product> products = productRepository.findAll().stream().map(ProductCatalog::detachedCopy).toList();
+            fullLoads.increment();
+
+            Snapshot snapshot = current.get();
+            Set<String> changed = snapshot != null ? diff(snapshot, products) : idsOf(products);
+            if (snapshot != null && changed.isEmpty()) {
+                return snapshot;
+            }
+            if (snapshot != null) {
+                driftDetected.increment();
+                log.warn("Product catalog snapshot was stale, reloaded {} changed products: {}",
+                        changed.size(), changed);
+                // Keep the existing objects of unchanged products (caches keyed by product identity stay valid)
+                products = products.stream()
+                        .map(product -> changed.contains(product.getId()) ? product : snapshot.byId().get(product.getId()))
+                        .toList();
+            }
+            return swap(snapshot, products, changed);
+        }
+    }
+
+    private void periodicCheck() {
+        if (current.get() == null) {
+            // Nothing has been served from the snapshot yet
+            return;
+        }
+        try {
+            periodicChecks.increment();
+            reload();
+        } catch (Exception e) {
+            failures.increment();
+            log.error("Product catalog consistency check failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private Snapshot swap(Snapshot previous, List<Product> products, Set<String> changed) {
+        Snapshot next = Snapshot.of(previous != null ? previous.version() + 1 : 1, products);
+        current.set(next);
+        log.info("Product catalog snapshot v{}: {} products ({} changed)",
+                next.version(), next.products().size(), changed.size());
+        eventPublisher.publishEvent(new ProductCatalogChangedEvent(next.version(), changed));
+        return next;
+    }
+
+    private static Set<String> diff(Snapshot snapshot, List<Product> products) {
+        Set<String> changed = new HashSet<>();
+        for (Product product : products) {
+            if (!sameContent(product, snapshot.byId().get(product.getId()))) {
+                changed.add(product.getId());
+            }
+        }
+        Set<String> loadedIds = idsOf(products);
+        for (String id : snapshot.byId().keySet()) {
+            if (!loadedIds.contains(id)) {
+                changed.add(id);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 比较产品内容（忽略时间戳：刷新后的实体可能带有比数据库列更高精度的 updated_at）
+     */
+    private static boolean sameContent(Product a, Product b) {
+        return b != null
+                && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getTagline(), b.getTagline())
+                && Objects.equals(a.getDescription(), b.getDescription())
+                && Objects.equals(a.getLongDescription(), b.getLongDescription())
+                && (a.getPrice() == null ? b.getPrice() == null
+                        : b.getPrice() != null && a.getPrice().compareTo(b.getPrice()) == 0)
+                && Objects.equals(a.getCategory(), b.getCategory())
+                && Objects.equals(a.getImageUrl(), b.getImageUrl())
+                && Objects.equals(a.getFeatures(), b.getFeatures())
+                && Objects.equals(a.getStock(), b.getStock());
+    }
+
+    /**
+     * 复制产品：快照不能与持久化上下文共享实体（同一请求中的写操作会修改托管实体）
+     */
+    private static Product detachedCopy(Product product) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setTagline(product.getTagline());
+        copy.setDescription(product.getDescription());
+        copy.setLongDescription(product.getLongDescription());
+        copy.setPrice(product.getPrice());
+        copy.setCategory(product.getCategory());
+        copy.setImageUrl(product.getImageUrl());
+        copy.setFeatures(product.getFeatures() != null ? List.copyOf(product.getFeatures()) : null);
+        copy.setStock(product.getStock());
+        copy.setCreatedAt(product.getCreatedAt());
+        copy.setUpdatedAt(product.getUpdatedAt());
+        return copy;
+    }
+
+    private static Set<String> idsOf(List<Product> products) {
+        Set<String> ids = new HashSet<>();
+        products.forEach(product -> ids.add(product.getId()));
+        return ids;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checker.shutdownNow();
+    }
+
+    /**
+     * 获取目录快照统计信息
+     */
+    public Map<String, Object> getStats() {
+        Snapshot snapshot = current.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("version", snapshot != null ? snapshot.version() : 0);
+        stats.put("products", snapshot != null ? snapshot.products().size() : 0);
+        stats.put("full_loads", fullLoads.sum());
+        stats.put("product_refreshes", productRefreshes.sum());
+        stats.put("periodic_checks", periodicChecks.sum());
+        stats.put("drift_detected", driftDetected.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    /**
+     * 不可变目录快照
+     *
+     * @param version    快照版本（每次替换递增）
+     * @param products   全部产品（数据库顺序）
+     * @param byId       产品ID → 产品
+     * @param byCategory 小写分类 → 产品列表
+     * @param searchText 产品ID → 小写搜索文本（名称 + tagline + 描述）
+     */
+    public record Snapshot(long version, List<Product> products, Map<String, Product> byId,
+            Map<String, List<Product>> byCategory, Map<String, String> searchText) {
+
+        static Snapshot of(long version, List<Product> products) {
+            Map<String, Product> byId = new LinkedHashMap<>();
+            Map<String, List<Product>> byCategory = new LinkedHashMap<>();
+            Map<String, String> searchText = new LinkedHashMap<>();
+            for (Product product : products) {
+                byId.put(product.getId(), product);
+                if (product.getCategory() != null) {
+                    byCategory.computeIfAbsent(product.getCategory().toLowerCase(), key -> new ArrayList<>())
+                            .add(product);
+                }
+                searchText.put(product.getId(), (product.getName() + " " +
+                        (product.getTagline() != null ? product.getTagline() : "") + " " +
+                        (product.getDescription() != null ? product.getDescription() : "")).toLowerCase());
+            }
+            byCategory.replaceAll((category, list) -> List.copyOf(list));
+            return new Snapshot(version, List.copyOf(products), Collections.unmodifiableMap(byId),
+                    Collections.unmodifiableMap(byCategory), Collections.unmodifiableMap(searchText));
+        }
+
+        /**
+         * 按ID查询，不存在返回 null
+         */
+        public Product get(String id) {
+            return byId.get(id);
+        }
+
+        /**
+         * 按分类查询（忽略大小写），不存在返回空列表
+         */
+        public List<Product> inCategory(String category) {
+            return byCategory.getOrDefault(category.toLowerCase(), List.of());
+        }
+    }
+}
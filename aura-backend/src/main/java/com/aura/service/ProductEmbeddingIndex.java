@@ -0,0 +1,264 @@
+package com.aura.service;
+
+import com.aura.model.entity.Product;
+import com.aura.model.event.ProductCatalogChangedEvent;
+import com.aura.service.ai.EmbeddingBatchDispatcher;
+import com.aura.service.ai.QueryEmbeddingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 产品语义向量索引
+ *
+ * 职责：
+ * 1. 把每个产品的名称、tagline、描述、特性拼成一段文本，一次批量调用 EmbeddingModel 向量化，
+ *    归一化后保存在内存中（产品数量很少，线性扫描即可，不使用通用 VectorStore）
+ * 2. 语义搜索：查询向量化（QueryEmbeddingService，带缓存和微批处理）后与所有产品向量做点积，
+ *    返回相似度最高的 top-K 个产品，补充关键词搜索没有字面匹配的问题（"something for sleeping on flights"）
+ * 3. 监听 ProductCatalogChangedEvent，在后台只对文本发生变化的产品重新向量化（库存变化不会触发）
+ * 4. 应用启动后在后台预先构建索引，首次搜索时如仍未构建则同步构建
+ */
+@Component
+@Slf4j
+public class ProductEmbeddingIndex {
+
+    private final ProductCatalog productCatalog;
+    private final EmbeddingBatchDispatcher embeddingBatchDispatcher;
+    private final QueryEmbeddingService queryEmbeddingService;
+    private final ThreadPoolTaskExecutor aiTaskExecutor;
+    private final boolean enabled;
+    private final int defaultTopK;
+    private final double minSimilarity;
+
+    private volatile Map<String, Vector> vectors;
+    private final Object updateLock = new Object();
+
+    // Metrics
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder embeddedProducts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ProductEmbeddingIndex(ProductCatalog productCatalog,
+            EmbeddingBatchDispatcher embeddingBatchDispatcher,
+            QueryEmbeddingService queryEmbeddingService,
+            @Qualifier("aiTaskExecutor") ThreadPoolTaskExecutor aiTaskExecutor,
+            @Value("${app.catalog.semantic.enabled:true}") boolean enabled,
+            @Value("${app.catalog.semantic.top-k:5}") int defaultTopK,
+            @Value("${app.catalog.semantic.min-similarity:0.3}") double minSimilarity) {
+        this.productCatalog = productCatalog;
+        this.embeddingBatchDispatcher = embeddingBatchDispatcher;
+        this.queryEmbeddingService = queryEmbeddingService;
+        this.aiTaskExecutor = aiTaskExecutor;
+        this.enabled = enabled;
+        this.defaultTopK = defaultTopK;
+        this.minSimilarity = minSimilarity;
+    }
+
+    /**
+     * 语义搜索，返回默认 top-K
+     */
+    public List<Product> search(String query) {
+        return search(query, defaultTopK);
+    }
+
+    /**
+     * 语义搜索产品（按余弦相似度降序）
+     *
+     * @param query 自然语言查询
+     * @param topK  最多返回的产品数
+     * @return 相似度不低于 min-similarity 的产品，未启用或查询为空时返回空列表
+     */
+    public List<Product> search(String query, int topK) {
+        if (!enabled || !StringUtils.hasText(query) || topK <= 0) {
+            return Collections.emptyList();
+        }
+        Map<String, Vector> current = current();
+        if (current.isEmpty()) {
+            return Collections.emptyList();
+        }
+        searches.increment();
+        float[] queryVector = normalize(queryEmbeddingService.embed(query));
+
+        Map<String, Double> scores = new HashMap<>();
+        current.forEach((productId, vector) -> {
+            double similarity = dot(queryVector, vector.embedding());
+            if (similarity >= minSimilarity) {
+                scores.put(productId, similarity);
+            }
+        });
+
+        // Return products from the latest snapshot (current stock), most similar first
+        return productCatalog.snapshot().products().stream()
+                .filter(product -> scores.containsKey(product.getId()))
+                .sorted((p1, p2) -> Double.compare(scores.get(p2.getId()), scores.get(p1.getId())))
+                .limit(topK)
+                .toList();
+    }
+
+    /**
+     * 应用启动后在后台构建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        submit(() -> current());
+    }
+
+    /**
+     * 目录快照更新后在后台重新向量化文本有变化的产品
+     * （监听器在目录刷新锁内同步调用，不能在这里调用 EmbeddingModel）
+     */
+    @EventListener
+    public void onCatalogChanged(ProductCatalogChangedEvent event) {
+        if (!enabled || vectors == null) {
+            // Built on startup or first search
+            return;
+        }
+        submit(this::refresh);
+    }
+
+    private void submit(Runnable task) {
+        try {
+            aiTaskExecutor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    failures.increment();
+                    log.error("Failed to update product embedding index: {}", e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The next catalog change or search brings the index up to date
+            failures.increment();
+            log.warn("Product embedding index update rejected: executor saturated");
+        }
+    }
+
+    private Map<String, Vector> current() {
+        Map<String, Vector> current = vectors;
+        if (current != null) {
+            return current;
+        }
+        refresh();
+        return vectors;
+    }
+
+    /**
+     * 与最新快照同步：文本未变的产品复用已有向量，其余产品一次批量向量化
+     */
+    private void refresh() {
+        // Load the catalog before locking: a first load publishes an event handled by this index
+        ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+        synchronized (updateLock) {
+            Map<String, Vector> previous = vectors != null ? vectors : Map.of();
+            Map<String, Vector> next = new LinkedHashMap<>();
+            List<Product> pending = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            for (Product product : catalog.products()) {
+                String text = embeddingText(product);
+                Vector existing = previous.get(product.getId());
+                if (existing != null && existing.text().equals(text)) {
+                    next.put(product.getId(), existing);
+                } else {
+                    pending.add(product);
+                    texts.add(text);
+                }
+            }
+            if (vectors != null && pending.isEmpty() && next.size() == previous.size()) {
+                return;
+            }
+
+            List<float[]> embeddings = embeddingBatchDispatcher.embedAll(texts);
+            for (int i = 0; i < pending.size(); i++) {
+                next.put(pending.get(i).getId(), new Vector(texts.get(i), normalize(embeddings.get(i))));
+            }
+            embeddedProducts.add(pending.size());
+            vectors = Collections.unmodifiableMap(next);
+            log.info("Product embedding index synced to catalog v{}: {} products ({} embedded)",
+                    catalog.version(), next.size(), pending.size());
+        }
+    }
+
+    private static String embeddingText(Product product) {
+        StringBuilder text = new StringBuilder(product.getName());
+        if (StringUtils.hasText(product.getTagline())) {
+            text.append(". ").append(product.getTagline());
+        }
+        if (StringUtils.hasText(product.getDescription())) {
+            text.append("\n").append(product.getDescription());
+        }
+        if (product.getFeatures() != null && !product.getFeatures().isEmpty()) {
+            text.append("\nFeatures: ").append(String.join(", ", product.getFeatures()));
+        }
+        return text.toString();
+    }
+
+    private static float[] normalize(float[] embedding) {
+        double norm = 0;
+        for (float value : embedding) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return embedding;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[embedding.length];
+        for (int i = 0; i < embedding.length; i++) {
+            normalized[i] = embedding[i] * scale;
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    /**
+     * 获取语义索引统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Vector> current = vectors;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("products", current != null ? current.size() : 0);
+        stats.put("dimensions", current != null && !current.isEmpty()
+                ? current.values().iterator().next().embedding().length : 0);
+        stats.put("searches", searches.sum());
+        stats.put("embedded_products", embeddedProducts.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    /**
+     * 产品向量
+     *
+     * @param text      向量化的文本（用于判断产品内容是否变化）
+     * @param embedding 归一化后的向量
+     */
+    private record Vector(String text, float[] embedding) {
+    }
+}
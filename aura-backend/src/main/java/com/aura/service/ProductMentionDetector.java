@@ -0,0 +1,280 @@
+package com.aura.service;
+
+import com.aura.config.ProductMentionProperties;
+import com.aura.model.entity.Product;
+import com.aura.model.event.ProductCatalogChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * 产品提及识别（Aho-Corasick 多模式匹配）
+ *
+ * 职责：
+ * 1. 从目录快照构建多模式自动机，模式包括：
+ *    - 产品全名（"aura harmony"）
+ *    - 产品名中只属于该产品的词（"harmony"；所有产品共有的 "aura" 不算）
+ *    - 产品ID（"p1"）
+ *    - 配置的别名（app.catalog.mentions.aliases，例如 "headphones" → p1）
+ * 2. 一次线性扫描文本，返回提及的产品ID（按首次出现顺序），不再对每个关键词编译正则；
+ *    detectExplicit 只返回以产品全名或ID提及的产品（别名和名称中的单词只作为提示）
+ * 3. 按词边界匹配，允许复数 "s"（"speakers" 匹配 "speaker"）
+ * 4. 监听 ProductCatalogChangedEvent，名称或ID变化时重建自动机
+ *
+ * 调用方：ProductExpertAgent（从对话历史补全指代不明的问题）、OrchestratorAgent（意图路由）
+ */
+@Component
+@Slf4j
+public class ProductMentionDetector {
+
+    private final ProductCatalog productCatalog;
+    private final ProductMentionProperties properties;
+
+    private volatile Automaton automaton;
+    private final Object updateLock = new Object();
+
+    public ProductMentionDetector(ProductCatalog productCatalog, ProductMentionProperties properties) {
+        this.productCatalog = productCatalog;
+        this.properties = properties;
+    }
+
+    /**
+     * 识别文本中提及的产品
+     *
+     * @param text 任意文本（用户消息、助手回复）
+     * @return 提及的产品ID，按首次出现顺序；没有提及时返回空集合
+     */
+    public Set<String> detect(String text) {
+        if (!StringUtils.hasText(text)) {
+            return Collections.emptySet();
+        }
+        return current().scan(normalize(text), false);
+    }
+
+    /**
+     * 识别文本中以产品全名或产品ID明确提及的产品
+     * （"watch"、"phone" 等别名和名称中的单词不算，避免泛指被当作具体产品）
+     *
+     * @param text 任意文本
+     * @return 明确提及的产品ID，按首次出现顺序；没有时返回空集合
+     */
+    public Set<String> detectExplicit(String text) {
+        if (!StringUtils.hasText(text)) {
+            return Collections.emptySet();
+        }
+        return current().scan(normalize(text), true);
+    }
+
+    /**
+     * 目录快照更新后，名称、ID 有变化时重建自动机
+     */
+    @EventListener
+    public void onCatalogChanged(ProductCatalogChangedEvent event) {
+        synchronized (updateLock) {
+            if (automaton == null) {
+                // Built lazily on first use
+                return;
+            }
+            ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+            Map<String, String> patterns = patterns(catalog);
+            if (!patterns.equals(automaton.patterns())) {
+                automaton = Automaton.of(patterns, explicitPatterns(catalog, patterns));
+                log.info("Product mention automaton rebuilt for catalog v{}: {} patterns",
+                        event.version(), patterns.size());
+            }
+        }
+    }
+
+    private Automaton current() {
+        Automaton current = automaton;
+        if (current != null) {
+            return current;
+        }
+        // Load the catalog before locking: a first load publishes an event that takes updateLock
+        productCatalog.snapshot();
+        synchronized (updateLock) {
+            if (automaton == null) {
+                ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+                Map<String, String> patterns = patterns(catalog);
+                automaton = Automaton.of(patterns, explicitPatterns(catalog, patterns));
+                log.info("Product mention automaton built: {} patterns, {} states",
+                        automaton.patterns().size(), automaton.states());
+            }
+            return automaton;
+        }
+    }
+
+    /**
+     * 模式 → 产品ID（同一模式指向多个产品时丢弃，避免歧义）
+     */
+    private Map<String, String> patterns(ProductCatalog.Snapshot catalog) {
+        Map<String, String> patterns = new LinkedHashMap<>();
+        Set<String> ambiguous = new LinkedHashSet<>();
+
+        // Name words shared by several products ("aura") identify none of them
+        Map<String, Integer> nameWordCounts = new HashMap<>();
+        for (Product product : catalog.products()) {
+            new LinkedHashSet<>(List.of(normalize(product.getName()).split(" ")))
+                    .forEach(word -> nameWordCounts.merge(word, 1, Integer::sum));
+        }
+
+        for (Product product : catalog.products()) {
+            String name = normalize(product.getName());
+            addPattern(patterns, ambiguous, name, product.getId());
+            addPattern(patterns, ambiguous, normalize(product.getId()), product.getId());
+            for (String word : name.split(" ")) {
+                if (word.length() >= 3 && nameWordCounts.get(word) == 1) {
+                    addPattern(patterns, ambiguous, word, product.getId());
+                }
+            }
+            properties.getAliases().getOrDefault(product.getId(), List.of())
+                    .forEach(alias -> addPattern(patterns, ambiguous, normalize(alias), product.getId()));
+        }
+        ambiguous.forEach(patterns::remove);
+        return patterns;
+    }
+
+    /**
+     * 产品全名和产品ID模式（明确提及）
+     */
+    private static Set<String> explicitPatterns(ProductCatalog.Snapshot catalog, Map<String, String> patterns) {
+        Set<String> explicit = new LinkedHashSet<>();
+        for (Product product : catalog.products()) {
+            for (String pattern : List.of(normalize(product.getName()), normalize(product.getId()))) {
+                if (product.getId().equals(patterns.get(pattern))) {
+                    explicit.add(pattern);
+                }
+            }
+        }
+        return explicit;
+    }
+
+    private static void addPattern(Map<String, String> patterns, Set<String> ambiguous, String pattern,
+            String productId) {
+        if (pattern.isEmpty()) {
+            return;
+        }
+        String existing = patterns.putIfAbsent(pattern, productId);
+        if (existing != null && !existing.equals(productId)) {
+            ambiguous.add(pattern);
+        }
+    }
+
+    /**
+     * 小写，非字母数字字符替换为单个空格
+     */
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    /**
+     * Aho-Corasick 自动机（不可变，整体替换）
+     *
+     * @param patterns 模式 → 产品ID
+     * @param explicit 产品全名和ID模式
+     * @param next     状态 → (字符 → 下一状态)（goto 函数）
+     * @param fail     状态 → 失败转移状态
+     * @param output   状态 → 在该状态结束的模式（含失败链上的模式）
+     */
+    private record Automaton(Map<String, String> patterns, Set<String> explicit, List<Map<Character, Integer>> next,
+            int[] fail, List<List<String>> output) {
+
+        static Automaton of(Map<String, String> patterns, Set<String> explicit) {
+            List<Map<Character, Integer>> next = new ArrayList<>();
+            List<List<String>> output = new ArrayList<>();
+            next.add(new HashMap<>());
+            output.add(new ArrayList<>());
+
+            // 1. Trie of all patterns
+            for (String pattern : patterns.keySet()) {
+                int state = 0;
+                for (char c : pattern.toCharArray()) {
+                    Integer child = next.get(state).get(c);
+                    if (child == null) {
+                        child = next.size();
+                        next.get(state).put(c, child);
+                        next.add(new HashMap<>());
+                        output.add(new ArrayList<>());
+                    }
+                    state = child;
+                }
+                output.get(state).add(pattern);
+            }
+
+            // 2. Failure links, breadth first (a state's link is shallower than itself)
+            int[] fail = new int[next.size()];
+            Queue<Integer> queue = new ArrayDeque<>(next.get(0).values());
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (Map.Entry<Character, Integer> edge : next.get(state).entrySet()) {
+                    int child = edge.getValue();
+                    int link = fail[state];
+                    while (link != 0 && !next.get(link).containsKey(edge.getKey())) {
+                        link = fail[link];
+                    }
+                    Integer target = next.get(link).get(edge.getKey());
+                    fail[child] = target != null && target != child ? target : 0;
+                    output.get(child).addAll(output.get(fail[child]));
+                    queue.add(child);
+                }
+            }
+            return new Automaton(Map.copyOf(patterns), Set.copyOf(explicit), next, fail, output);
+        }
+
+        int states() {
+            return next.size();
+        }
+
+        /**
+         * 一次扫描文本，返回按词边界匹配的模式对应的产品ID
+         *
+         * @param text         已归一化的文本（小写，单个空格分隔）
+         * @param explicitOnly 只匹配产品全名和ID
+         */
+        Set<String> scan(String text, boolean explicitOnly) {
+            Set<String> productIds = new LinkedHashSet<>();
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                while (state != 0 && !next.get(state).containsKey(c)) {
+                    state = fail[state];
+                }
+                state = next.get(state).getOrDefault(c, 0);
+                for (String pattern : output.get(state)) {
+                    if (explicitOnly && !explicit.contains(pattern)) {
+                        continue;
+                    }
+                    int start = i - pattern.length() + 1;
+                    if (isBoundary(text, start - 1) && endsWord(text, i + 1)) {
+                        productIds.add(patterns.get(pattern));
+                    }
+                }
+            }
+            return productIds;
+        }
+
+        /**
+         * 匹配结束位置后是词边界，或复数 "s" 后是词边界
+         */
+        private static boolean endsWord(String text, int end) {
+            return isBoundary(text, end) || text.charAt(end) == 's' && isBoundary(text, end + 1);
+        }
+
+        private static boolean isBoundary(String text, int index) {
+            return index < 0 || index >= text.length() || text.charAt(index) == ' ';
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.aura.service;
+
+import com.aura.model.entity.Product;
+import com.aura.model.event.ProductCatalogChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 面向大模型的产品精简投影
+ *
+ * 职责：
+ * 1. 按用途选择字段，替代直接序列化 Product 实体：
+ *    - SUMMARY：id、名称、tagline、价格、分类、库存状态（搜索结果、工具返回值）
+ *    - DETAIL：在 SUMMARY 基础上加描述和特性列表（产品咨询 Prompt）
+ * 2. 不包含长描述、图片路径、时间戳和具体库存数量（库存只以 in_stock / low_stock / out_of_stock 表示，
+ *    Prompt 不需要再靠规则阻止模型泄露库存数字）
+ * 3. 缓存每个产品的投影对象和序列化后的 JSON，多产品 Prompt 直接拼接，不再每次调用 Jackson
+ * 4. 监听 ProductCatalogChangedEvent，丢弃变更产品的缓存
+ *
+ * 库存状态取自库存预留引擎（InventoryReservationService.available），与 checkInventory 工具一致，
+ * 不使用落后一个 flush-interval 的 products.stock。
+ * 缓存条目记录生成它的 Product 实例和库存状态，实例不同（快照已替换或来自数据库）或库存状态变化时重新计算。
+ */
+@Component
+@Slf4j
+public class ProductProjections {
+
+    private final ObjectMapper objectMapper;
+    private final InventoryReservationService inventoryReservationService;
+    private final int lowStockThreshold;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ProductProjections(ObjectMapper objectMapper,
+            InventoryReservationService inventoryReservationService,
+            @Value("${app.catalog.projection.low-stock-threshold:10}") int lowStockThreshold) {
+        this.objectMapper = objectMapper;
+        this.inventoryReservationService = inventoryReservationService;
+        this.lowStockThreshold = lowStockThreshold;
+    }
+
+    /**
+     * 投影字段集
+     */
+    public enum View {
+        SUMMARY, DETAIL
+    }
+
+    /**
+     * 产品摘要投影
+     */
+    public Summary summary(Product product) {
+        return entry(product).summary();
+    }
+
+    /**
+     * 产品摘要投影列表
+     */
+    public List<Summary> summaries(List<Product> products) {
+        return products.stream().map(this::summary).toList();
+    }
+
+    /**
+     * 序列化产品列表（JSON 数组，由各产品预先序列化的 JSON 拼接）
+     *
+     * @param products 产品列表
+     * @param view     字段集
+     * @return JSON 数组字符串
+     */
+    public String toJson(List<Product> products, View view) {
+        return products.stream()
+                .map(product -> view == View.DETAIL ? entry(product).detailJson() : entry(product).summaryJson())
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    /**
+     * 目录快照更新后丢弃变更产品的缓存
+     */
+    @EventListener
+    public void onCatalogChanged(ProductCatalogChangedEvent event) {
+        event.productIds().forEach(entries::remove);
+    }
+
+    private Entry entry(Product product) {
+        String availability = availability(inventoryReservationService.available(product));
+        Entry cached = entries.get(product.getId());
+        if (cached != null && cached.source() == product && cached.summary().availability().equals(availability)) {
+            return cached;
+        }
+        Entry fresh = build(product, availability);
+        entries.put(product.getId(), fresh);
+        return fresh;
+    }
+
+    private Entry build(Product product, String availability) {
+        Summary summary = new Summary(product.getId(), product.getName(), product.getTagline(),
+                product.getPrice(), product.getCategory(), availability);
+        Detail detail = new Detail(product.getId(), product.getName(), product.getTagline(),
+                product.getPrice(), product.getCategory(), availability, product.getDescription(),
+                product.getFeatures() != null ? List.copyOf(product.getFeatures()) : List.of());
+        try {
+            return new Entry(product, summary, objectMapper.writeValueAsString(summary),
+                    objectMapper.writeValueAsString(detail));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize product projection " + product.getId(), e);
+        }
+    }
+
+    private String availability(int stock) {
+        if (stock <= 0) {
+            return "out_of_stock";
+        }
+        return stock <= lowStockThreshold ? "low_stock" : "in_stock";
+    }
+
+    /**
+     * 产品摘要
+     *
+     * @param availability in_stock / low_stock / out_of_stock
+     */
+    public record Summary(String id, String name, String tagline, BigDecimal price, String category,
+            String availability) {
+    }
+
+    /**
+     * 产品详情（摘要 + 描述 + 特性）
+     *
+     * @param availability in_stock / low_stock / out_of_stock
+     */
+    public record Detail(String id, String name, String tagline, BigDecimal price, String category,
+            String availability, String description, List<String> features) {
+    }
+
+    private record Entry(Product source, Summary summary, String summaryJson, String detailJson) {
+    }
+}
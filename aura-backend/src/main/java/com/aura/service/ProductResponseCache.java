@@ -0,0 +1,184 @@
+package com.aura.service;
+
+import com.aura.model.dto.ApiResponse;
+import com.aura.model.entity.Product;
+import com.aura.model.event.ProductCatalogChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 产品接口响应缓存（预序列化 JSON + 强 ETag）
+ *
+ * 职责：
+ * 1. 缓存产品列表、分类列表、产品详情接口的完整响应体（ApiResponse 序列化后的 JSON 字节），
+ *    命中时不再读取实体、解析 features、调用 Jackson
+ * 2. 每个响应体计算强 ETag（内容 SHA-256），控制器在响应中返回 ETag，
+ *    Spring 对带 ETag 的 ResponseEntity 自动处理 If-None-Match（匹配时返回 304，不发送响应体）
+ * 3. 监听 ProductCatalogChangedEvent（库存或目录变化）：丢弃列表、分类响应和变更产品的详情响应，
+ *    未变化产品的详情响应保留
+ *
+ * 列表、分类响应绑定生成时的目录快照版本；详情响应绑定生成时的产品对象
+ * （目录快照对未变化的产品复用同一对象，因此详情响应在其他产品变化后仍然命中）。
+ * 只缓存快照中存在的分类和产品，条目数不超过 产品数 + 分类数 + 1。
+ * 响应中的库存来自目录快照（products.stock）：启用库存预留引擎时最多落后一个 app.inventory.flush-interval，
+ * 每次回写后快照刷新、响应失效；下单和 checkInventory 工具以预留引擎的可用库存为准。
+ */
+@Component
+@Slf4j
+public class ProductResponseCache {
+
+    private static final String ALL = "all";
+    private static final String CATEGORY_PREFIX = "category:";
+    private static final String PRODUCT_PREFIX = "product:";
+
+    private final ProductCatalog productCatalog;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Entry> responses = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ProductResponseCache(ProductCatalog productCatalog, ObjectMapper objectMapper) {
+        this.productCatalog = productCatalog;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 全部产品列表响应
+     */
+    public CachedResponse allProducts() {
+        ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+        return get(ALL, catalog, null, catalog::products);
+    }
+
+    /**
+     * 分类产品列表响应（分类忽略大小写，不存在的分类不缓存）
+     */
+    public CachedResponse productsByCategory(String category) {
+        ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+        String key = CATEGORY_PREFIX + category.toLowerCase();
+        if (!catalog.byCategory().containsKey(category.toLowerCase())) {
+            return serialize(key, catalog.version(), List.of());
+        }
+        return get(key, catalog, null, () -> catalog.inCategory(category));
+    }
+
+    /**
+     * 产品详情响应
+     *
+     * @return 产品不在快照中时为空（由调用方按原逻辑处理）
+     */
+    public Optional<CachedResponse> product(String id) {
+        ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+        Product product = catalog.get(id);
+        if (product == null) {
+            return Optional.empty();
+        }
+        return Optional.of(get(PRODUCT_PREFIX + id, catalog, product, () -> product));
+    }
+
+    /**
+     * @param source 详情响应对应的产品对象（按对象同一性判断是否过期）；列表响应为 null（按快照版本判断）
+     */
+    private CachedResponse get(String key, ProductCatalog.Snapshot catalog, Product source, Supplier<Object> data) {
+        Entry cached = responses.get(key);
+        if (cached != null && (source != null
+                ? cached.source() == source
+                : cached.response().version() == catalog.version())) {
+            hits.increment();
+            return cached.response();
+        }
+        misses.increment();
+        CachedResponse fresh = serialize(key, catalog.version(), data.get());
+        // Never replace an entry built from a newer snapshot
+        responses.merge(key, new Entry(fresh, source),
+                (old, candidate) -> old.response().version() >= candidate.response().version() ? old : candidate);
+        return fresh;
+    }
+
+    private CachedResponse serialize(String key, long version, Object data) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(ApiResponse.success(data));
+            return new CachedResponse(version, body, etag(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize product response " + key, e);
+        }
+    }
+
+    /**
+     * 强 ETag：响应体 SHA-256 的前 16 字节（Base64URL）
+     */
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            byte[] prefix = new byte[16];
+            System.arraycopy(digest, 0, prefix, 0, prefix.length);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(prefix) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * 目录快照更新后丢弃受影响的响应
+     */
+    @EventListener
+    public void onCatalogChanged(ProductCatalogChangedEvent event) {
+        int before = responses.size();
+        responses.keySet().removeIf(key -> ALL.equals(key) || key.startsWith(CATEGORY_PREFIX)
+                || key.startsWith(PRODUCT_PREFIX) && event.productIds().contains(key.substring(PRODUCT_PREFIX.length())));
+        invalidations.add(before - responses.size());
+        log.debug("Product response cache invalidated for catalog v{}: {} responses dropped",
+                event.version(), before - responses.size());
+    }
+
+    /**
+     * 获取响应缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", responses.size());
+        stats.put("bytes", responses.values().stream().mapToLong(entry -> entry.response().body().length).sum());
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.sum());
+        stats.put("hit_rate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    /**
+     * 预序列化的响应
+     *
+     * @param version 生成时的目录快照版本
+     * @param body    ApiResponse JSON 字节（只读）
+     * @param etag    强 ETag（带引号）
+     */
+    public record CachedResponse(long version, byte[] body, String etag) {
+    }
+
+    /**
+     * @param response 预序列化的响应
+     * @param source   详情响应对应的产品对象（列表响应为 null）
+     */
+    private record Entry(CachedResponse response, Product source) {
+    }
+}
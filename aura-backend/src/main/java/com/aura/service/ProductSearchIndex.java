@@ -0,0 +1,265 @@
+package com.aura.service;
+
+import com.aura.model.entity.Product;
+import com.aura.model.event.ProductCatalogChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 产品倒排索引（BM25 排序）
+ *
+ * 职责：
+ * 1. 对目录快照中每个产品的名称、tagline、描述分词（小写、去停用词、简单复数归一），建立倒排索引
+ * 2. 查询时按 BM25F 打分：各字段词频按字段权重（名称 > tagline > 描述）和字段长度归一后累加
+ * 3. 返回得分最高的 top-K 个产品，并丢弃远低于最高分的结果（min-score-ratio）
+ * 4. 监听 ProductCatalogChangedEvent，只对变更的产品重新分词
+ *
+ * 示例：
+ * - "Tell me about Aura Harmony" → 词项 ["aura", "harmony"]（"tell", "me", "about" 为停用词）
+ * - "aura" 出现在所有产品名中，IDF 很低；"harmony" 只出现在一个产品中，决定排序
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex {
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "the", "and", "or", "but", "of", "to", "in", "on", "at", "for", "with", "by", "from",
+            "about", "into", "as", "is", "are", "was", "were", "be", "been", "do", "does", "did", "have", "has",
+            "had", "can", "could", "would", "should", "will", "may", "might", "must",
+            "i", "me", "my", "you", "your", "we", "our", "it", "its", "this", "that", "these", "those",
+            "them", "they", "their", "he", "she", "his", "her",
+            "what", "which", "who", "how", "why", "when", "where", "there", "here",
+            "tell", "show", "give", "want", "need", "like", "please", "know", "any", "some", "more", "much",
+            "many", "very", "just", "also", "than", "then", "so", "if", "not", "no", "yes", "all");
+
+    private static final String NAME = "name";
+    private static final String TAGLINE = "tagline";
+    private static final String DESCRIPTION = "description";
+
+    private final ProductCatalog productCatalog;
+    private final Map<String, Double> fieldBoosts;
+    private final double k1;
+    private final double b;
+    private final int defaultTopK;
+    private final double minScoreRatio;
+
+    private volatile Index index;
+    private final Object updateLock = new Object();
+
+    public ProductSearchIndex(ProductCatalog productCatalog,
+            @Value("${app.catalog.search.name-boost:3.0}") double nameBoost,
+            @Value("${app.catalog.search.tagline-boost:2.0}") double taglineBoost,
+            @Value("${app.catalog.search.description-boost:1.0}") double descriptionBoost,
+            @Value("${app.catalog.search.k1:1.2}") double k1,
+            @Value("${app.catalog.search.b:0.75}") double b,
+            @Value("${app.catalog.search.top-k:5}") int defaultTopK,
+            @Value("${app.catalog.search.min-score-ratio:0.25}") double minScoreRatio) {
+        this.productCatalog = productCatalog;
+        this.fieldBoosts = Map.of(NAME, nameBoost, TAGLINE, taglineBoost, DESCRIPTION, descriptionBoost);
+        this.k1 = k1;
+        this.b = b;
+        this.defaultTopK = defaultTopK;
+        this.minScoreRatio = minScoreRatio;
+    }
+
+    /**
+     * 搜索产品，返回默认 top-K
+     */
+    public List<Product> search(String query) {
+        return search(query, defaultTopK);
+    }
+
+    /**
+     * 搜索产品（按 BM25 得分降序）
+     *
+     * @param query 用户查询
+     * @param topK  最多返回的产品数
+     * @return 匹配的产品，没有有效词项或无匹配时返回空列表
+     */
+    public List<Product> search(String query, int topK) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty() || topK <= 0) {
+            return Collections.emptyList();
+        }
+
+        Index current = current();
+        Map<String, Double> scores = new HashMap<>();
+        for (String term : terms) {
+            Map<String, Map<String, Integer>> postings = current.postings().get(term);
+            if (postings == null) {
+                continue;
+            }
+            double idf = idf(current.docs().size(), postings.size());
+            postings.forEach((productId, fieldFrequencies) ->
+                    scores.merge(productId, idf * termScore(current, productId, fieldFrequencies), Double::sum));
+        }
+        if (scores.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Return products from the latest snapshot (current stock), best score first
+        double threshold = scores.values().stream().mapToDouble(Double::doubleValue).max().orElse(0) * minScoreRatio;
+        return productCatalog.snapshot().products().stream()
+                .filter(product -> scores.containsKey(product.getId()) && scores.get(product.getId()) >= threshold)
+                .sorted((p1, p2) -> Double.compare(scores.get(p2.getId()), scores.get(p1.getId())))
+                .limit(topK)
+                .toList();
+    }
+
+    /**
+     * BM25F：各字段词频按字段权重和字段长度归一后累加，再做饱和
+     */
+    private double termScore(Index current, String productId, Map<String, Integer> fieldFrequencies) {
+        Map<String, Integer> lengths = current.docs().get(productId).lengths();
+        double weightedFrequency = 0;
+        for (Map.Entry<String, Integer> entry : fieldFrequencies.entrySet()) {
+            String field = entry.getKey();
+            double averageLength = current.averageLengths().getOrDefault(field, 1.0);
+            double normalization = 1 - b + b * lengths.getOrDefault(field, 0) / averageLength;
+            weightedFrequency += fieldBoosts.get(field) * entry.getValue() / normalization;
+        }
+        return weightedFrequency * (k1 + 1) / (weightedFrequency + k1);
+    }
+
+    private static double idf(int documents, int documentFrequency) {
+        return Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * 目录快照更新后，只对变更的产品重新分词
+     */
+    @EventListener
+    public void onCatalogChanged(ProductCatalogChangedEvent event) {
+        synchronized (updateLock) {
+            Index previous = index;
+            if (previous == null) {
+                // Built lazily on first search
+                return;
+            }
+            ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+            Map<String, Doc> docs = new LinkedHashMap<>(previous.docs());
+            for (String productId : event.productIds()) {
+                Product product = catalog.get(productId);
+                if (product != null) {
+                    docs.put(productId, Doc.of(product));
+                } else {
+                    docs.remove(productId);
+                }
+            }
+            index = Index.of(docs);
+            log.debug("Product search index updated to catalog v{} ({} products re-indexed)",
+                    catalog.version(), event.productIds().size());
+        }
+    }
+
+    private Index current() {
+        Index current = index;
+        if (current != null) {
+            return current;
+        }
+        // Load the catalog before locking: a first load publishes an event that takes updateLock
+        productCatalog.snapshot();
+        synchronized (updateLock) {
+            if (index == null) {
+                Map<String, Doc> docs = new LinkedHashMap<>();
+                for (Product product : productCatalog.snapshot().products()) {
+                    docs.put(product.getId(), Doc.of(product));
+                }
+                index = Index.of(docs);
+                log.info("Product search index built: {} products, {} terms",
+                        docs.size(), index.postings().size());
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 分词：转小写，按非字母数字字符切分，去掉停用词和单字符词，简单复数归一（headphones → headphone）
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() < 2 || STOP_WORDS.contains(token)) {
+                continue;
+            }
+            tokens.add(normalize(token));
+        }
+        return tokens;
+    }
+
+    private static String normalize(String token) {
+        if (token.length() > 3 && token.endsWith("s") && !token.endsWith("ss")) {
+            return token.substring(0, token.length() - 1);
+        }
+        return token;
+    }
+
+    /**
+     * 单个产品的分词结果
+     *
+     * @param frequencies 字段 → (词项 → 词频)
+     * @param lengths     字段 → 词项数
+     */
+    private record Doc(Map<String, Map<String, Integer>> frequencies, Map<String, Integer> lengths) {
+
+        static Doc of(Product product) {
+            Map<String, Map<String, Integer>> frequencies = new HashMap<>();
+            Map<String, Integer> lengths = new HashMap<>();
+            addField(frequencies, lengths, NAME, product.getName());
+            addField(frequencies, lengths, TAGLINE, product.getTagline());
+            addField(frequencies, lengths, DESCRIPTION, product.getDescription());
+            return new Doc(frequencies, lengths);
+        }
+
+        private static void addField(Map<String, Map<String, Integer>> frequencies, Map<String, Integer> lengths,
+                String field, String text) {
+            List<String> tokens = tokenize(text);
+            Map<String, Integer> counts = new HashMap<>();
+            tokens.forEach(token -> counts.merge(token, 1, Integer::sum));
+            frequencies.put(field, counts);
+            lengths.put(field, tokens.size());
+        }
+    }
+
+    /**
+     * 不可变索引（整体替换）
+     *
+     * @param docs           产品ID → 分词结果
+     * @param postings       词项 → (产品ID → (字段 → 词频))
+     * @param averageLengths 字段 → 平均词项数
+     */
+    private record Index(Map<String, Doc> docs,
+            Map<String, Map<String, Map<String, Integer>>> postings, Map<String, Double> averageLengths) {
+
+        static Index of(Map<String, Doc> docs) {
+            Map<String, Map<String, Map<String, Integer>>> postings = new HashMap<>();
+            Map<String, Double> totalLengths = new HashMap<>();
+            docs.forEach((productId, doc) -> {
+                doc.frequencies().forEach((field, counts) -> counts.forEach((term, count) ->
+                        postings.computeIfAbsent(term, key -> new HashMap<>())
+                                .computeIfAbsent(productId, key -> new HashMap<>())
+                                .put(field, count)));
+                doc.lengths().forEach((field, length) -> totalLengths.merge(field, (double) length, Double::sum));
+            });
+            Map<String, Double> averageLengths = new HashMap<>();
+            totalLengths.forEach((field, total) ->
+                    averageLengths.put(field, docs.isEmpty() ? 1.0 : Math.max(1.0, total / docs.size())));
+            return new Index(Map.copyOf(docs), postings, averageLengths);
+        }
+    }
+}
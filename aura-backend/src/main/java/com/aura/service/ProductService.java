@@ -1,16 +1,33 @@
 package com.aura.service;
 
+import com.aura.model.dto.ProductPage;
+import com.aura.model.dto.ProductSummary;
 import com.aura.model.entity.Product;
+import com.aura.model.event.ProductChangedEvent;
 import com.aura.repository.ProductRepository;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
  * 产品核心业务服务
@@ -18,20 +35,37 @@ import java.util.List;
  * 职责：
  * 1. 产品基础查询（全部产品、按ID、按分类）
  * 2. 产品搜索（关键词搜索、批量查询）
- * 3. 库存管理（检查库存、更新库存）
+ * 3. 库存管理（检查库存、原子更新库存、多行订单批量扣减/恢复）
  * 4. 产品筛选（按条件过滤）
  * 
  * 设计原则：
  * - 所有查询都通过此 Service 层，Function 层不直接访问 Repository
- * - 使用 Stream API 实现灵活的搜索和过滤
  * - 统一异常处理，返回空集合而不是抛异常（查询类方法）
+ * - 读路径（列表、分类、搜索、批量查询）读取内存中的 ProductCatalog 快照，不访问数据库
+ * - 关键词搜索使用 ProductSearchIndex（倒排索引 + BM25 排序）
+ * - 语义搜索使用 ProductEmbeddingIndex（预先计算的产品向量，内存中检索）
+ * - 分页列表（listProducts）直接查询数据库索引，返回精简投影，开销与页大小成正比
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ProductService {
 
+    // Conditional stock updates: the row lock is held only for the statement, never across Java code
+    private static final String DECREMENT_STOCK_SQL =
+            "UPDATE products SET stock = stock - ?, updated_at = CURRENT_TIMESTAMP WHERE id = ? AND stock >= ?";
+    private static final String INCREMENT_STOCK_SQL =
+            "UPDATE products SET stock = stock + ?, updated_at = CURRENT_TIMESTAMP WHERE id = ?";
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final ProductRepository productRepository;
+    private final ProductCatalog productCatalog;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductEmbeddingIndex productEmbeddingIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
 
     // ==================== 基础查询 ====================
     
@@ -47,7 +81,7 @@ public class ProductService {
     public List<Product> getAllProducts() {
         try {
             log.info("Getting all products");
-            List<Product> products = productRepository.findAll();
+            List<Product> products = productCatalog.snapshot().products();
             log.info("Found {} products", products.size());
             return products;
         } catch (Exception e) {
@@ -81,8 +115,7 @@ public class ProductService {
      * 根据分类查询产品
      * 
      * 实现：
-     * - 使用 Stream API 过滤，不依赖 Repository 自定义方法
-     * - 忽略大小写匹配（equalsIgnoreCase）
+     * - 直接读取目录快照的分类索引（忽略大小写）
      * 
      * @param category 产品分类（例如："headphones", "watches"）
      * @return 该分类下的所有产品，如果分类为空或出错返回空列表
@@ -93,16 +126,121 @@ public class ProductService {
         }
         try {
             log.info("Getting products by category: {}", category);
-            // ✅ 使用stream过滤，不依赖Repository方法
-            return productRepository.findAll().stream()
-                    .filter(p -> category.equalsIgnoreCase(p.getCategory()))
-                    .toList();
+            return productCatalog.snapshot().inCategory(category);
         } catch (Exception e) {
             log.error("Failed to get products by category: {}", category, e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * 分页列表（筛选 + 排序 + 键集分页）
+     * 
+     * 用途：
+     * - 前端产品列表页（分类、价格区间、只看有货、排序、加载更多）
+     * 
+     * 实现：
+     * - 筛选和排序下推到数据库（idx_category_price / idx_price / idx_name / idx_created_at）
+     * - 键集分页：游标记录上一页最后一行的 (排序值, id)，下一页从该位置继续扫描索引，不使用 OFFSET
+     * - 只查询列表需要的列（ProductSummary），不加载描述、长描述、特性
+     * - 多查询一行判断是否还有下一页
+     * 
+     * @param category 分类（可选）
+     * @param minPrice 最低价格（可选）
+     * @param maxPrice 最高价格（可选）
+     * @param inStock  只返回有库存的产品
+     * @param sort     排序：name（默认）/ price_asc / price_desc / newest
+     * @param cursor   上一页返回的 nextCursor（可选，第一页为空）
+     * @param size     页大小（默认 20，最大 100）
+     * @return 当前页产品和下一页游标，出错返回空页
+     * @throws IllegalArgumentException 如果排序方式、游标或价格区间无效
+     */
+    public ProductPage listProducts(String category, BigDecimal minPrice, BigDecimal maxPrice, boolean inStock,
+            String sort, String cursor, Integer size) {
+        ListingSort listingSort = ListingSort.from(sort);
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0) {
+            throw new IllegalArgumentException("minPrice cannot be greater than maxPrice");
+        }
+        int pageSize = size == null || size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        String[] position = decodeCursor(listingSort, cursor);
+        String categoryFilter = StringUtils.hasText(category) ? canonicalCategory(category.trim()) : null;
+
+        try {
+            log.info("Listing products: category={}, price={}..{}, inStock={}, sort={}, size={}, cursor={}",
+                    categoryFilter, minPrice, maxPrice, inStock, listingSort, pageSize, position != null);
+            // One extra row tells whether there is a next page
+            Pageable limit = PageRequest.of(0, pageSize + 1);
+            String afterId = position != null ? position[1] : null;
+            List<ProductSummary> rows = switch (listingSort) {
+                case NAME -> productRepository.listByName(categoryFilter, minPrice, maxPrice, inStock,
+                        position != null ? position[0] : null, afterId, limit);
+                case PRICE_ASC -> productRepository.listByPriceAsc(categoryFilter, minPrice, maxPrice, inStock,
+                        position != null ? new BigDecimal(position[0]) : null, afterId, limit);
+                case PRICE_DESC -> productRepository.listByPriceDesc(categoryFilter, minPrice, maxPrice, inStock,
+                        position != null ? new BigDecimal(position[0]) : null, afterId, limit);
+                case NEWEST -> productRepository.listByNewest(categoryFilter, minPrice, maxPrice, inStock,
+                        position != null ? LocalDateTime.parse(position[0]) : null, afterId, limit);
+            };
+
+            if (rows.size() <= pageSize) {
+                return new ProductPage(rows, null);
+            }
+            List<ProductSummary> items = rows.subList(0, pageSize);
+            return new ProductPage(List.copyOf(items), encodeCursor(listingSort, items.get(pageSize - 1)));
+        } catch (Exception e) {
+            log.error("Failed to list products", e);
+            return new ProductPage(Collections.emptyList(), null);
+        }
+    }
+
+    /**
+     * 分类忽略大小写：换成目录中存储的写法，查询仍用 p.category = :category 走 idx_category_price
+     * （LOWER(p.category) 会让索引失效）；目录中没有该分类时原样返回
+     */
+    private String canonicalCategory(String category) {
+        List<Product> products = productCatalog.snapshot().inCategory(category);
+        return products.isEmpty() ? category : products.get(0).getCategory();
+    }
+
+    /**
+     * 游标 = Base64URL("排序方式|排序值|id")，排序方式不一致时视为无效
+     */
+    private static String encodeCursor(ListingSort sort, ProductSummary last) {
+        String value = switch (sort) {
+            case NAME -> last.name();
+            case PRICE_ASC, PRICE_DESC -> last.price().toPlainString();
+            case NEWEST -> String.valueOf(last.createdAt());
+        };
+        String raw = sort.name() + "|" + value + "|" + last.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return {排序值, id}，游标为空时返回 null
+     */
+    private static String[] decodeCursor(ListingSort sort, String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int first = raw.indexOf('|');
+            int last = raw.lastIndexOf('|');
+            if (first < 0 || first == last || !raw.substring(0, first).equals(sort.name())) {
+                throw new IllegalArgumentException("Invalid cursor for sort " + sort.name().toLowerCase(Locale.ROOT));
+            }
+            String value = raw.substring(first + 1, last);
+            switch (sort) {
+                case PRICE_ASC, PRICE_DESC -> new BigDecimal(value);
+                case NEWEST -> LocalDateTime.parse(value);
+                default -> { }
+            }
+            return new String[] { value, raw.substring(last + 1) };
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
     // ==================== 搜索/批量查询 ====================
     
     /**
@@ -112,90 +250,22 @@ public class ProductService {
      * - ProductExpertAgent（用户询问产品时）
      * - SearchProductsFunction（AI Function Calling）
      * 
-     * 搜索算法：
-     * 1. 分词：将关键词按空格拆分（例如："Aura Harmony" → ["aura", "harmony"]）
-     * 2. 搜索范围：产品名称 + tagline + 描述
-     * 3. 匹配规则：任意一个词匹配即返回（OR 逻辑）
-     * 4. 过滤：忽略长度 ≤ 2 的词（例如："me", "it"）
-     * 
-     * 示例：
-     * - 输入："Tell me about Aura Harmony" 
-     * - 分词：["tell", "me", "about", "aura", "harmony"]
-     * - 有效词：["tell", "about", "aura", "harmony"]（过滤掉"me"）
-     * - 匹配：找到包含 "aura" 或 "harmony" 的产品
+     * 搜索算法（ProductSearchIndex，内存倒排索引）：
+     * 1. 分词：转小写、去停用词（例如："Tell me about Aura Harmony" → ["aura", "harmony"]）
+     * 2. 搜索范围：产品名称 + tagline + 描述（字段权重：名称 > tagline > 描述）
+     * 3. 排序：BM25 得分降序，只在所有产品中都出现的词（如 "aura"）得分很低
+     * 4. 返回：得分最高的 top-K 个产品（app.catalog.search.top-k）
      * 
      * @param keyword 搜索关键词（支持多词，空格分隔）
-     * @return 匹配的产品列表，如果关键词为空或出错返回空列表
+     * @return 按相关度排序的产品列表，如果关键词为空或出错返回空列表
      */
-    public List<Product> searchProducts(String keyword) { //只搜索 SQL 数据库！
+    public List<Product> searchProducts(String keyword) { //只搜索 SQL 数据库中的产品（不含说明书）！
         if (!StringUtils.hasText(keyword)) {
             return Collections.emptyList();
         }
         try {
             log.info("Searching products with keyword: {}", keyword);
-            
-            // 步骤1: 转为小写，统一处理
-            String lowerKeyword = keyword.toLowerCase();
-
-            // 步骤2: 分词 - 按空格拆分关键词
-            // 例如："Tell me about Aura Harmony" → ["tell", "me", "about", "aura", "harmony"]
-            String[] keywords = lowerKeyword.split("\\s+");
-
-            // 步骤3: 使用 Stream API 过滤产品
-            // 
-            // Stream API 工作原理：
-            // 1. productRepository.findAll() → 获取所有产品（例如：6个产品）
-            // 2. .stream() → 转为流，可以进行链式操作
-            // 3. .filter(条件) → 保留满足条件的产品，过滤掉不满足的
-            // 4. .toList() → 将过滤后的结果转回列表
-            //
-            // 例如：有 6 个产品，只有 2 个匹配关键词 → 返回 2 个产品
-            List<Product> results = productRepository.findAll().stream()
-                    .filter(p -> {
-                        // filter() 会对每个产品（p）执行这个检查
-                        // 如果返回 true → 保留这个产品
-                        // 如果返回 false → 过滤掉这个产品
-                        
-                        // === 对于当前这个产品 p，检查是否匹配关键词 ===
-                        
-                        // 子步骤1: 构建搜索文本（把产品的所有文本信息合并）
-                        // 
-                        // 假设产品 p 是 Harmony 耳机：
-                        // - p.getName() = "Harmony"
-                        // - p.getTagline() = "Perfect sound quality"
-                        // - p.getDescription() = "Wireless noise-cancelling headphones..."
-                        // 
-                        // 合并后：searchText = "harmony perfect sound quality wireless noise-cancelling headphones..."
-                        String searchText = (p.getName() + " " +
-                                (p.getTagline() != null ? p.getTagline() : "") + " " +
-                                (p.getDescription() != null ? p.getDescription() : "")).toLowerCase();
-
-                        // 子步骤2: 检查关键词是否在 searchText 中
-                        // 
-                        // 回顾：keywords = ["tell", "me", "about", "aura", "harmony"]
-                        // 
-                        // 对每个关键词进行检查：
-                        for (String kw : keywords) {
-                            // 过滤短词：忽略长度 ≤ 2 的词（"me", "it" 等）
-                            // 检查匹配：searchText 是否包含这个关键词
-                            //
-                            // 示例检查过程：
-                            // - "tell" (长度4) → searchText.contains("tell") → false（不匹配）
-                            // - "me" (长度2) → 跳过（长度 ≤ 2）
-                            // - "about" (长度5) → searchText.contains("about") → false（不匹配）
-                            // - "aura" (长度4) → searchText.contains("aura") → false（不匹配）
-                            // - "harmony" (长度7) → searchText.contains("harmony") → true（匹配！）
-                            if (kw.length() > 2 && searchText.contains(kw)) {
-                                return true;  // 找到匹配！保留这个产品
-                                // 只要找到一个关键词匹配，立即返回 true，不再检查其他关键词
-                            }
-                        }
-                        
-                        // 所有关键词都检查完了，没有一个匹配
-                        return false;  // 过滤掉这个产品
-                    })
-                    .toList();  // 把保留下来的产品转回列表
-
+            List<Product> results = productSearchIndex.search(keyword);
             log.info("Found {} products matching keyword: {}", results.size(), keyword);
             return results;
         } catch (Exception e) {
@@ -204,6 +274,34 @@ public class ProductService {
         }
     }
 
+    /**
+     * 语义搜索产品（按含义而不是字面匹配）
+     * 
+     * 调用方：
+     * - SearchProductsFunction、ProductExpertAgent（关键词搜索没有结果时）
+     * 
+     * 实现（ProductEmbeddingIndex）：
+     * - 查询向量化后与预先计算的产品向量（名称 + tagline + 描述 + 特性）比较余弦相似度
+     * - 例如 "something for sleeping on flights" 可以找到降噪耳机，即使没有共同的词
+     * 
+     * @param query 自然语言查询
+     * @return 按相似度排序的产品列表，如果查询为空或出错返回空列表
+     */
+    public List<Product> semanticSearchProducts(String query) {
+        if (!StringUtils.hasText(query)) {
+            return Collections.emptyList();
+        }
+        try {
+            log.info("Semantic product search: {}", query);
+            List<Product> results = productEmbeddingIndex.search(query);
+            log.info("Found {} products semantically matching: {}", results.size(), query);
+            return results;
+        } catch (Exception e) {
+            log.error("Failed to search products semantically: {}", query, e);
+            return Collections.emptyList();
+        }
+    }
+
     /**
      * 批量查询产品（根据多个ID）
      * 
@@ -211,7 +309,7 @@ public class ProductService {
      * - OrderService（创建订单时批量验证产品）
      * - 购物车功能（批量获取产品详情）
      * 
-     * 实现：使用 Stream API 过滤，不依赖 Repository 自定义方法
+     * 实现：按ID查询目录快照（不存在的ID忽略，结果按传入ID的顺序，去重）
      * 
      * @param ids 产品ID列表（例如：["harmony", "pulse", "flow"]）
      * @return 对应的产品列表，如果IDs为空或出错返回空列表
@@ -222,9 +320,11 @@ public class ProductService {
         }
         try {
             log.info("Finding products by IDs: {}", ids);
-            // ✅ 使用stream实现，不依赖Repository方法
-            return productRepository.findAll().stream()
-                    .filter(p -> ids.contains(p.getId()))
+            ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+            return ids.stream()
+                    .distinct()
+                    .map(catalog::get)
+                    .filter(Objects::nonNull)
                     .toList();
         } catch (Exception e) {
             log.error("Failed to find products by IDs: {}", ids, e);
@@ -272,48 +372,143 @@ public class ProductService {
      * 更新产品库存（扣减或增加）
      * 
      * 调用方：
-     * - OrderService.createOrder（创建订单时扣减库存）
-     * - OrderService.updateOrderStatus（取消订单时恢复库存）
+     * - 单个产品的库存调整（多行订单使用 decrementStock / incrementStock 批量方法）
      * 
      * 使用场景：
-     * 1. 下单：change = -2（扣减2个库存）
-     * 2. 取消订单：change = +2（恢复2个库存）
+     * 1. 扣减：change = -2（扣减2个库存）
+     * 2. 恢复：change = +2（恢复2个库存）
      * 
      * 安全校验：
-     * - 使用 @Transactional 保证原子性
-     * - 不允许库存变为负数（扣减时检查）
+     * - 单条条件 UPDATE 完成（stock = stock - ? WHERE id = ? AND stock >= ?），
+     *   不在 Java 中读-改-写，并发扣减不会丢失更新或超卖，行锁只在这一条语句期间持有
+     * - 影响行数为 0 时区分产品不存在和库存不足
      * 
      * @param productId 产品ID
      * @param change 库存变化量（负数=扣减，正数=增加）
      * @throws IllegalArgumentException 如果库存不足或产品ID为空
      * @throws EntityNotFoundException 如果产品不存在
      */
-    @Transactional // ✅ 添加事务注解，保证库存更新的原子性
+    @Transactional
     public void updateStock(String productId, int change) {
         if (!StringUtils.hasText(productId)) {
             throw new IllegalArgumentException("Product ID cannot be empty");
         }
+        if (change == 0) {
+            return;
+        }
 
-        // 步骤1: 查询产品
-        Product product = getProductById(productId);
-        Integer currentStock = product.getStock() != null ? product.getStock() : 0;
-        
-        // 步骤2: 计算新库存
-        int newStock = currentStock + change;
-
-        // 步骤3: 校验库存不能为负
-        if (newStock < 0) {
-            throw new IllegalArgumentException(
-                    String.format("Insufficient stock. Current: %d, Attempted to deduct: %d", 
-                        currentStock, -change));
+        int updated = change < 0
+                ? jdbcTemplate.update(DECREMENT_STOCK_SQL, -change, productId, -change)
+                : jdbcTemplate.update(INCREMENT_STOCK_SQL, change, productId);
+        if (updated == 0) {
+            throw stockUpdateFailure(productId, change);
         }
 
-        // 步骤4: 更新并保存
-        product.setStock(newStock);
-        productRepository.save(product);
+        // 通知缓存失效、刷新目录快照（事务提交后生效）
+        eventPublisher.publishEvent(new ProductChangedEvent(productId));
+        log.info("Stock updated for product {} (change: {})", productId, change > 0 ? "+" + change : change);
+    }
+
+    /**
+     * 批量扣减库存（多行订单）
+     * 
+     * 实现：
+     * - 同一产品的数量先合并，按产品ID排序后一次 JDBC batch 执行条件 UPDATE
+     *   （固定加锁顺序，避免并发订单互相死锁）
+     * - 任一产品影响行数为 0 时抛异常，调用方事务回滚，已执行的扣减一并撤销
+     * 
+     * @param quantities 产品ID → 扣减数量（正数）
+     * @throws IllegalArgumentException 如果任一产品库存不足或数量无效
+     * @throws EntityNotFoundException 如果任一产品不存在
+     */
+    @Transactional
+    public void decrementStock(Map<String, Integer> quantities) {
+        batchUpdateStock(quantities, DECREMENT_STOCK_SQL, true);
+    }
+
+    /**
+     * 批量增加库存（取消订单时恢复）
+     * 
+     * @param quantities 产品ID → 增加数量（正数）
+     * @throws IllegalArgumentException 如果数量无效
+     * @throws EntityNotFoundException 如果任一产品不存在
+     */
+    @Transactional
+    public void incrementStock(Map<String, Integer> quantities) {
+        batchUpdateStock(quantities, INCREMENT_STOCK_SQL, false);
+    }
+
+    private void batchUpdateStock(Map<String, Integer> quantities, String sql, boolean decrement) {
+        if (quantities == null || quantities.isEmpty()) {
+            return;
+        }
+        quantities.forEach((productId, quantity) -> {
+            if (!StringUtils.hasText(productId) || quantity == null || quantity <= 0) {
+                throw new IllegalArgumentException("Invalid stock change: " + productId + " x " + quantity);
+            }
+        });
+
+        List<Map.Entry<String, Integer>> rows = new ArrayList<>(new TreeMap<>(quantities).entrySet());
+        int[][] counts = jdbcTemplate.batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.getValue());
+            ps.setString(2, row.getKey());
+            if (decrement) {
+                ps.setInt(3, row.getValue());
+            }
+        });
+        for (int i = 0; i < rows.size(); i++) {
+            if (counts[0][i] == 0) {
+                Map.Entry<String, Integer> row = rows.get(i);
+                throw stockUpdateFailure(row.getKey(), decrement ? -row.getValue() : row.getValue());
+            }
+        }
 
-        log.info("Stock updated for product {}: {} → {} (change: {})",
-                productId, currentStock, newStock, change > 0 ? "+" + change : change);
+        rows.forEach(row -> eventPublisher.publishEvent(new ProductChangedEvent(row.getKey())));
+        log.info("Stock {} for {} products: {}", decrement ? "deducted" : "restored", rows.size(), quantities);
+    }
+
+    /**
+     * 批量写入库存净变化量（库存预留引擎回写）
+     * 
+     * 调用方：
+     * - InventoryReservationService（后台按 flush-interval 回写 inventory_journal 中的扣减和恢复）
+     * 
+     * 实现：一次 JDBC batch，每个产品一条 UPDATE（stock = stock + 变化量），
+     * 库存是否充足已由预留引擎保证，这里不再做条件判断
+     * 
+     * @param deltas 产品ID → 库存变化量（负数=扣减，正数=增加）
+     */
+    @Transactional
+    public void applyStockDeltas(Map<String, Integer> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Integer>> rows = new ArrayList<>(new TreeMap<>(deltas).entrySet());
+        int[][] counts = jdbcTemplate.batchUpdate(INCREMENT_STOCK_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.getValue());
+            ps.setString(2, row.getKey());
+        });
+        for (int i = 0; i < rows.size(); i++) {
+            if (counts[0][i] == 0) {
+                log.warn("Stock delta for missing product {} discarded: {}", rows.get(i).getKey(),
+                        rows.get(i).getValue());
+            }
+        }
+
+        rows.forEach(row -> eventPublisher.publishEvent(new ProductChangedEvent(row.getKey())));
+        log.info("Stock deltas written for {} products: {}", rows.size(), deltas);
+    }
+
+    /**
+     * 条件 UPDATE 没有更新任何行：产品不存在，或库存不足
+     */
+    private RuntimeException stockUpdateFailure(String productId, int change) {
+        Product product = productRepository.findById(productId).orElse(null);
+        if (product == null) {
+            return new EntityNotFoundException("Product not found: " + productId);
+        }
+        return new IllegalArgumentException(String.format("Insufficient stock for product %s. Current: %d, "
+                + "Attempted to deduct: %d", product.getName(), product.getStock(), -change));
     }
 
     // ==================== 筛选（匹配推荐功能） ====================
@@ -358,4 +553,28 @@ public class ProductService {
     public List<Product> getProductDetailsByIds(List<String> ids) {
         return findByIdIn(ids);
     }
-}
\ No newline at end of file
+
+    /**
+     * 分页列表排序方式
+     */
+    public enum ListingSort {
+        NAME, PRICE_ASC, PRICE_DESC, NEWEST;
+
+        /**
+         * 解析排序参数（忽略大小写，为空时按名称排序）
+         *
+         * @throws IllegalArgumentException 如果排序方式不支持
+         */
+        public static ListingSort from(String sort) {
+            if (!StringUtils.hasText(sort)) {
+                return NAME;
+            }
+            try {
+                return valueOf(sort.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported sort: " + sort
+                        + " (expected name, price_asc, price_desc or newest)");
+            }
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.aura.service;
+
+import com.aura.model.entity.Product;
+import com.aura.model.event.ProductCatalogChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 产品联想索引（字符三元组）
+ *
+ * 职责：
+ * 1. 对产品名称、tagline、特性列表预先计算字符三元组（trigram），建立 trigram → 候选项 的倒排索引
+ * 2. 联想查询：统计查询与候选项共有的 trigram，按相似度（Jaccard）× 字段权重 + 前缀加分排序，
+ *    支持前缀输入（"harm" → Aura Harmony）和拼写错误（"harmoney" → Aura Harmony）
+ * 3. 模糊解析产品名中的词（ProductExpertAgent 从对话历史中识别产品时使用）
+ * 4. 监听 ProductCatalogChangedEvent，只重新计算变更产品的候选项
+ *
+ * trigram 按词计算，词前补两个空格、词后补一个空格（与 PostgreSQL pg_trgm 相同），
+ * 例如 "echo" → ["  e", " ec", "ech", "cho", "ho "]。
+ */
+@Component
+@Slf4j
+public class ProductSuggestIndex {
+
+    private static final String NAME = "name";
+    private static final String TAGLINE = "tagline";
+    private static final String FEATURE = "feature";
+    private static final Map<String, Double> FIELD_WEIGHTS = Map.of(NAME, 3.0, TAGLINE, 2.0, FEATURE, 1.0);
+    private static final double PREFIX_BONUS = 0.5;
+    private static final int MAX_LIMIT = 20;
+
+    private final ProductCatalog productCatalog;
+    private final double minSimilarity;
+    private final double fuzzyNameSimilarity;
+
+    private volatile Index index;
+    private final Object updateLock = new Object();
+
+    public ProductSuggestIndex(ProductCatalog productCatalog,
+            @Value("${app.catalog.suggest.min-similarity:0.2}") double minSimilarity,
+            @Value("${app.catalog.suggest.fuzzy-name-similarity:0.45}") double fuzzyNameSimilarity) {
+        this.productCatalog = productCatalog;
+        this.minSimilarity = minSimilarity;
+        this.fuzzyNameSimilarity = fuzzyNameSimilarity;
+    }
+
+    /**
+     * 联想查询
+     *
+     * @param query 用户输入（可以是前缀或有拼写错误）
+     * @param limit 最多返回的建议数（上限 20）
+     * @return 按得分降序的建议，每个产品最多一条；输入为空返回空列表
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        if (!StringUtils.hasText(query) || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String normalized = normalize(query);
+        Set<String> queryTrigrams = trigrams(normalized);
+        if (queryTrigrams.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Index current = current();
+        int[] shared = new int[current.entries().size()];
+        for (String trigram : queryTrigrams) {
+            int[] postings = current.postings().get(trigram);
+            if (postings != null) {
+                for (int entry : postings) {
+                    shared[entry]++;
+                }
+            }
+        }
+
+        // Best suggestion per product
+        Map<String, Suggestion> best = new HashMap<>();
+        for (int i = 0; i < shared.length; i++) {
+            if (shared[i] == 0) {
+                continue;
+            }
+            Entry entry = current.entries().get(i);
+            double similarity = (double) shared[i] / (queryTrigrams.size() + entry.trigrams().size() - shared[i]);
+            boolean prefix = entry.text().startsWith(normalized) || entry.text().contains(" " + normalized);
+            if (similarity < minSimilarity && !prefix) {
+                continue;
+            }
+            double score = FIELD_WEIGHTS.get(entry.field()) * (similarity + (prefix ? PREFIX_BONUS : 0));
+            Suggestion suggestion = new Suggestion(entry.productId(), entry.productName(), entry.display(),
+                    entry.field(), score);
+            best.merge(entry.productId(), suggestion, (a, b) -> a.score() >= b.score() ? a : b);
+        }
+
+        return best.values().stream()
+                .sorted((a, b) -> Double.compare(b.score(), a.score()))
+                .limit(Math.min(limit, MAX_LIMIT))
+                .toList();
+    }
+
+    /**
+     * 模糊解析产品名中的词（例如 "harmoney" → "harmony"）
+     *
+     * 只接受拼写错误：与产品名词的编辑距离不超过 1（含相邻字母交换），且不是产品名词加后缀
+     * （"flows"、"flower" 是普通单词，不解析为 "flow"）
+     *
+     * @param word 单个词
+     * @return 最相似的产品名词（小写），相似度不足或不像拼写错误时为空
+     */
+    public Optional<String> resolveNameWord(String word) {
+        if (!StringUtils.hasText(word)) {
+            return Optional.empty();
+        }
+        String normalized = normalize(word);
+        Map<String, Set<String>> nameWords = current().nameWords();
+        if (nameWords.containsKey(normalized)) {
+            return Optional.of(normalized);
+        }
+        Set<String> wordTrigrams = trigrams(normalized);
+        String bestWord = null;
+        double bestSimilarity = fuzzyNameSimilarity;
+        for (Map.Entry<String, Set<String>> nameWord : nameWords.entrySet()) {
+            if (normalized.startsWith(nameWord.getKey()) || !withinOneEdit(normalized, nameWord.getKey())) {
+                continue;
+            }
+            double similarity = jaccard(wordTrigrams, nameWord.getValue());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestWord = nameWord.getKey();
+            }
+        }
+        return Optional.ofNullable(bestWord);
+    }
+
+    /**
+     * 目录快照更新后，只重新计算变更产品的候选项
+     */
+    @EventListener
+    public void onCatalogChanged(ProductCatalogChangedEvent event) {
+        synchronized (updateLock) {
+            Index previous = index;
+            if (previous == null) {
+                // Built lazily on first query
+                return;
+            }
+            ProductCatalog.Snapshot catalog = productCatalog.snapshot();
+            Map<String, List<Entry>> entriesByProduct = new LinkedHashMap<>(previous.entriesByProduct());
+            for (String productId : event.productIds()) {
+                Product product = catalog.get(productId);
+                if (product != null) {
+                    entriesByProduct.put(productId, entriesOf(product));
+                } else {
+                    entriesByProduct.remove(productId);
+                }
+            }
+            index = Index.of(entriesByProduct);
+        }
+    }
+
+    private Index current() {
+        Index current = index;
+        if (current != null) {
+            return current;
+        }
+        // Load the catalog before locking: a first load publishes an event that takes updateLock
+        productCatalog.snapshot();
+        synchronized (updateLock) {
+            if (index == null) {
+                Map<String, List<Entry>> entriesByProduct = new LinkedHashMap<>();
+                for (Product product : productCatalog.snapshot().products()) {
+                    entriesByProduct.put(product.getId(), entriesOf(product));
+                }
+                index = Index.of(entriesByProduct);
+                log.info("Product suggest index built: {} entries, {} trigrams",
+                        index.entries().size(), index.postings().size());
+            }
+            return index;
+        }
+    }
+
+    private static List<Entry> entriesOf(Product product) {
+        List<Entry> entries = new ArrayList<>();
+        addEntry(entries, product, NAME, product.getName());
+        addEntry(entries, product, TAGLINE, product.getTagline());
+        if (product.getFeatures() != null) {
+            product.getFeatures().forEach(feature -> addEntry(entries, product, FEATURE, feature));
+        }
+        return List.copyOf(entries);
+    }
+
+    private static void addEntry(List<Entry> entries, Product product, String field, String display) {
+        if (!StringUtils.hasText(display)) {
+            return;
+        }
+        String text = normalize(display);
+        entries.add(new Entry(product.getId(), product.getName(), field, display, text, trigrams(text)));
+    }
+
+    /**
+     * 小写，非字母数字字符替换为空格
+     */
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    /**
+     * 按词计算 trigram（词前补两个空格、词后补一个空格）
+     */
+    static Set<String> trigrams(String normalized) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (String word : normalized.split(" ")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    /**
+     * 编辑距离（插入、删除、替换、相邻交换）是否不超过 1
+     */
+    private static boolean withinOneEdit(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (a.length() == b.length()) {
+            if (i == a.length()) {
+                return true;
+            }
+            // One substitution, or one transposition of adjacent letters
+            return a.substring(i + 1).equals(b.substring(i + 1))
+                    || i + 1 < a.length() && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                    && a.substring(i + 2).equals(b.substring(i + 2));
+        }
+        // One insertion into the shorter word
+        String longer = a.length() > b.length() ? a : b;
+        String shorter = a.length() > b.length() ? b : a;
+        return longer.substring(i + 1).equals(shorter.substring(i));
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int shared = 0;
+        for (String trigram : a) {
+            if (b.contains(trigram)) {
+                shared++;
+            }
+        }
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+
+    /**
+     * 联想建议
+     *
+     * @param productId   产品ID
+     * @param productName 产品名称
+     * @param text        匹配的文本（名称、tagline 或特性）
+     * @param field       匹配的字段：name / tagline / feature
+     * @param score       得分
+     */
+    public record Suggestion(String productId, String productName, String text, String field, double score) {
+    }
+
+    private record Entry(String productId, String productName, String field, String display, String text,
+            Set<String> trigrams) {
+    }
+
+    /**
+     * 不可变索引（整体替换）
+     *
+     * @param entriesByProduct 产品ID → 候选项
+     * @param entries          全部候选项（postings 中的下标）
+     * @param postings         trigram → 候选项下标
+     * @param nameWords        产品名中的词 → trigram
+     */
+    private record Index(Map<String, List<Entry>> entriesByProduct, List<Entry> entries,
+            Map<String, int[]> postings, Map<String, Set<String>> nameWords) {
+
+        static Index of(Map<String, List<Entry>> entriesByProduct) {
+            List<Entry> entries = new ArrayList<>();
+            entriesByProduct.values().forEach(entries::addAll);
+
+            Map<String, List<Integer>> lists = new HashMap<>();
+            Map<String, Set<String>> nameWords = new HashMap<>();
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                for (String trigram : entry.trigrams()) {
+                    lists.computeIfAbsent(trigram, key -> new ArrayList<>()).add(i);
+                }
+                if (NAME.equals(entry.field())) {
+                    for (String word : entry.text().split(" ")) {
+                        nameWords.computeIfAbsent(word, key -> new HashSet<>(trigrams(key)));
+                    }
+                }
+            }
+
+            Map<String, int[]> postings = new HashMap<>();
+            lists.forEach((trigram, list) -> postings.put(trigram, list.stream().mapToInt(Integer::intValue).toArray()));
+            return new Index(Map.copyOf(entriesByProduct), List.copyOf(entries), postings, nameWords);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.aura.service.ai;
 
+import com.aura.ai.agent.ConversationContext;
 import com.aura.ai.agent.OrchestratorAgent;
 import com.aura.model.dto.ChatRequest;
 import com.aura.model.dto.ChatResponse;
@@ -8,6 +9,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * AI Agent Service
@@ -17,6 +21,7 @@ import org.springframework.stereotype.Service;
  * - 统一的业务编排层
  * - 处理完整的对话流程
  * - 保存对话历史
+ * - 每个请求构建一次 ConversationContext（历史只加载、转换一次），供各Agent共享
  * - 调用 OrchestratorAgent 进行路由
  */
 @Service
@@ -26,6 +31,7 @@ public class AIAgentService {
 
     private final MemoryService memoryService;
     private final OrchestratorAgent orchestratorAgent;
+    private final ConversationSummaryService conversationSummaryService;
 
     /**
      * Process chat message
@@ -35,7 +41,7 @@ public class AIAgentService {
      * 1. 验证输入
      * 2. 提取实体
      * 3. 保存用户消息
-     * 4. 路由到OrchestratorAgent
+     * 4. 构建对话上下文并路由到OrchestratorAgent
      * 5. 保存AI响应
      * 6. 返回响应
      * 
@@ -64,16 +70,18 @@ public class AIAgentService {
             // 2. Save user message to memory (before processing)
             memoryService.saveMessage(sessionId, "user", userMessage, entities);
 
-            // 3. Route to orchestrator agent
+            // 3. Build the conversation context once and route to orchestrator agent
+            ConversationContext context = buildContext(request, entities);
             // OrchestratorAgent will:
             // - Analyze intent
             // - Route to appropriate specialized agent
             // - Return response
-            String responseContent = orchestratorAgent.routeMessage(userMessage, sessionId);// ⚠️ ⚠️ ⚠️每条消息都调用OrchestratorAgent进行路由
+            String responseContent = orchestratorAgent.routeMessage(context);// ⚠️ ⚠️ ⚠️每条消息都调用OrchestratorAgent进行路由
 
             // 4. Save AI response to memory
             memoryService.saveMessage(sessionId, "assistant", responseContent, 
                     java.util.Map.of("entities", entities));
+            conversationSummaryService.onTurnCompleted(sessionId);
 
             // 5. Create and return ChatResponse
             ChatResponse response = new ChatResponse();
@@ -98,21 +106,99 @@ public class AIAgentService {
         }
     }
 
+    /**
+     * Process chat message as a token stream
+     * 流式处理聊天消息
+     *
+     * 与 processMessage 相同的流程（提取实体、保存用户消息、路由），
+     * 但最终响应以Flux逐段返回；流结束后再保存完整的AI响应。
+     * 客户端断开（取消）或出错时保存已生成的部分响应，并在上下文数据中标记 partial，
+     * 避免历史中只留下没有回复的用户消息。
+     *
+     * @param request Chat request
+     * @return Flux of response content chunks
+     */
+    public Flux<String> streamMessage(ChatRequest request) {
+        String sessionId = request.getSessionId();
+        String userMessage = request.getMessage();
+
+        log.info("Streaming message for session: {}", sessionId);
+
+        // Validate input
+        if (sessionId == null || sessionId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Session ID cannot be null or empty");
+        }
+        if (userMessage == null || userMessage.trim().isEmpty()) {
+            throw new IllegalArgumentException("Message cannot be null or empty");
+        }
+
+        // Synchronized: a cancel can arrive while a chunk is being appended
+        StringBuffer fullResponse = new StringBuffer();
+
+        return Flux.defer(() -> {
+                    // 1. Extract entities and save user message
+                    var entities = memoryService.extractEntities(userMessage);
+                    memoryService.saveMessage(sessionId, "user", userMessage, entities);
+
+                    // 2. Build the conversation context once, then route and stream the agent response
+                    ConversationContext context = buildContext(request, entities);
+                    return orchestratorAgent.routeMessageStream(context)
+                            .doOnNext(fullResponse::append)
+                            .doFinally(signal -> {
+                                // 3. Persist the AI response once the stream ends: in full on completion,
+                                //    the text generated so far (marked partial) on cancel or error
+                                boolean complete = signal == SignalType.ON_COMPLETE;
+                                java.util.Map<String, Object> contextData = complete
+                                        ? java.util.Map.of("entities", entities)
+                                        : java.util.Map.of("entities", entities, "partial", true,
+                                                "end_signal", signal.name());
+                                memoryService.saveMessage(sessionId, "assistant", fullResponse.toString(),
+                                        contextData);
+                                conversationSummaryService.onTurnCompleted(sessionId);
+                                if (complete) {
+                                    log.info("Streamed message completed for session: {} ({} chars)",
+                                            sessionId, fullResponse.length());
+                                } else {
+                                    log.warn("Streamed message ended by {} for session: {}, saved {} chars as partial",
+                                            signal, sessionId, fullResponse.length());
+                                }
+                            });
+                })
+                // Routing and retrieval are blocking calls; keep them off the request thread
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Build the request-scoped conversation context
+     * 构建请求级对话上下文（在保存用户消息之后调用，历史窗口包含当前消息；
+     * 已折叠进会话摘要的消息以摘要代替）
+     */
+    private ConversationContext buildContext(ChatRequest request, java.util.Map<String, Object> entities) {
+        java.util.List<ChatHistory> history = memoryService.getRecentHistory(request.getSessionId(),
+                ConversationContext.HISTORY_WINDOW);
+        return ConversationContext.of(request, history,
+                conversationSummaryService.getSummary(request.getSessionId()), entities);
+    }
+
     /**
      * Get chat history
+     * 获取对话历史（按时间正序；beforeId 不为空时返回该消息之前的一页）
      */
-    public java.util.List<ChatResponse> getChatHistory(String sessionId) {
-        log.info("Retrieving chat history for session: {}", sessionId);
+    public java.util.List<ChatResponse> getChatHistory(String sessionId, int limit, Long beforeId) {
+        log.info("Retrieving chat history for session: {}, limit={}, beforeId={}", sessionId, limit, beforeId);
 
         try {
-            // Get all chat history for the session from MemoryService
-            java.util.List<ChatHistory> history = memoryService.getRecentHistory(sessionId, 100);
+            // Latest page from MemoryService, or an older page via keyset pagination
+            java.util.List<ChatHistory> history = beforeId == null
+                    ? memoryService.getLatestPage(sessionId, limit)
+                    : memoryService.getHistoryBefore(sessionId, beforeId, limit);
 
             // Convert to ChatResponse list
             return history.stream()
                     .map(chatHistory -> {
                         ChatResponse response = new ChatResponse();
                         response.setSessionId(sessionId);
+                        response.setMessageId(chatHistory.getId());
                         response.setMessage(chatHistory.getMessage());
                         response.setTimestamp(chatHistory.getCreatedAt().toString());
 
@@ -134,6 +220,7 @@ public class AIAgentService {
 
         try {
             memoryService.clearSession(sessionId);
+            conversationSummaryService.clear(sessionId);
             log.info("Chat history cleared successfully for session: {}", sessionId);
         } catch (Exception e) {
             log.error("Error clearing chat history: {}", e.getMessage(), e);
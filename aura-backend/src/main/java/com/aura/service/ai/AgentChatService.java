@@ -0,0 +1,202 @@
+package com.aura.service.ai;
+
+import com.aura.config.AgentProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.stereotype.Service;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agent Chat Service
+ * Agent模型调用服务
+ *
+ * 职责：
+ * - 按Agent应用 app.agents.* 中配置的模型、max tokens、temperature、超时
+ *   （hard-timeout: false 的Agent不在超时后放弃调用：其工具可能正在修改订单，放弃后用户会被告知失败而操作仍然完成）
+ * - 统计每个Agent的调用耗时和Token用量
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AgentChatService {
+
+    private final AgentProperties agentProperties;
+
+    private final Map<String, AgentStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Call the model with the agent's options and return the content
+     * 使用Agent配置调用模型并返回内容
+     *
+     * @param agent   Agent key under app.agents (e.g. "intent")
+     * @param request Prepared chat request
+     * @return Response content
+     */
+    public String call(String agent, ChatClient.ChatClientRequestSpec request) {
+        AgentProperties.AgentOptions options = agentProperties.get(agent);
+        AgentStats agentStats = statsFor(agent);
+        long startNanos = System.nanoTime();
+
+        try {
+            ChatClient.ChatClientRequestSpec spec = request.options(toChatOptions(options, false));
+            ChatResponse response = options.getTimeout() != null && options.isHardTimeout()
+                    ? callWithTimeout(agent, spec, options.getTimeout(), agentStats)
+                    : spec.call().chatResponse();
+
+            agentStats.record(System.nanoTime() - startNanos, response.getMetadata().getUsage());
+            return response.getResult().getOutput().getText();
+        } catch (RuntimeException e) {
+            agentStats.errors.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Stream the model response with the agent's options
+     * 使用Agent配置流式调用模型
+     *
+     * @param agent   Agent key under app.agents
+     * @param request Prepared chat request
+     * @return Flux of response content chunks
+     */
+    public Flux<String> stream(String agent, ChatClient.ChatClientRequestSpec request) {
+        AgentProperties.AgentOptions options = agentProperties.get(agent);
+        AgentStats agentStats = statsFor(agent);
+
+        return Flux.defer(() -> {
+            long startNanos = System.nanoTime();
+            Usage[] lastUsage = new Usage[1];
+
+            Flux<ChatResponse> responses = request.options(toChatOptions(options, true))
+                    .stream()
+                    .chatResponse();
+            if (options.getTimeout() != null && options.isHardTimeout()) {
+                // Overall deadline, not per chunk: the first chunk and every later one must arrive before it
+                long deadlineNanos = startNanos + options.getTimeout().toNanos();
+                responses = responses.timeout(Mono.delay(options.getTimeout()),
+                        response -> Mono.delay(Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()))));
+            }
+
+            return responses
+                    .doOnNext(response -> {
+                        if (response.getMetadata() != null && response.getMetadata().getUsage() != null) {
+                            lastUsage[0] = response.getMetadata().getUsage();
+                        }
+                    })
+                    .filter(response -> response.getResult() != null
+                            && response.getResult().getOutput().getText() != null)
+                    .map(response -> response.getResult().getOutput().getText())
+                    .doOnComplete(() -> agentStats.record(System.nanoTime() - startNanos, lastUsage[0]))
+                    .doOnError(e -> {
+                        if (e instanceof TimeoutException) {
+                            agentStats.timeouts.increment();
+                        }
+                        agentStats.errors.increment();
+                    });
+        });
+    }
+
+    /**
+     * Get per-agent latency and token statistics
+     * 获取每个Agent的耗时和Token统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        stats.forEach((agent, agentStats) -> {
+            AgentProperties.AgentOptions options = agentProperties.get(agent);
+            Map<String, Object> agentResult = agentStats.toMap();
+            agentResult.put("model", options.getModel());
+            agentResult.put("max_tokens", options.getMaxTokens());
+            agentResult.put("temperature", options.getTemperature());
+            agentResult.put("timeout", options.getTimeout() != null ? options.getTimeout().toString() : null);
+            agentResult.put("hard_timeout", options.isHardTimeout());
+            result.put(agent, agentResult);
+        });
+        return result;
+    }
+
+    private ChatResponse callWithTimeout(String agent, ChatClient.ChatClientRequestSpec spec,
+            Duration timeout, AgentStats agentStats) {
+        try {
+            // Blocking call on the elastic scheduler so the caller can stop waiting after the timeout;
+            // cancelling on timeout interrupts the worker, and the HTTP read timeout set in OpenAIConfig
+            // ends a socket read that ignores the interrupt
+            return Mono.fromCallable(() -> spec.call().chatResponse())
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .timeout(timeout)
+                    .block();
+        } catch (RuntimeException e) {
+            if (Exceptions.unwrap(e) instanceof TimeoutException) {
+                agentStats.timeouts.increment();
+                throw new IllegalStateException("Model call for agent '" + agent + "' timed out after " + timeout, e);
+            }
+            throw e;
+        }
+    }
+
+    private OpenAiChatOptions toChatOptions(AgentProperties.AgentOptions options, boolean streaming) {
+        // A fresh instance per call: ChatClient mutates options when merging function names
+        OpenAiChatOptions.Builder builder = OpenAiChatOptions.builder()
+                .model(options.getModel())
+                .maxTokens(options.getMaxTokens())
+                .temperature(options.getTemperature());
+        if (streaming) {
+            // Ask OpenAI to report token usage on the final chunk
+            builder.streamUsage(true);
+        }
+        return builder.build();
+    }
+
+    private AgentStats statsFor(String agent) {
+        return stats.computeIfAbsent(agent, key -> new AgentStats());
+    }
+
+    /**
+     * Per-agent counters
+     */
+    private static class AgentStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder latencyMillis = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+
+        void record(long elapsedNanos, Usage usage) {
+            calls.increment();
+            latencyMillis.add(elapsedNanos / 1_000_000);
+            if (usage != null) {
+                promptTokens.add(usage.getPromptTokens() != null ? usage.getPromptTokens() : 0);
+                completionTokens.add(usage.getGenerationTokens() != null ? usage.getGenerationTokens() : 0);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            long count = calls.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", count);
+            map.put("errors", errors.sum());
+            map.put("timeouts", timeouts.sum());
+            map.put("avg_latency_ms", count == 0 ? 0 : latencyMillis.sum() / count);
+            map.put("prompt_tokens", promptTokens.sum());
+            map.put("completion_tokens", completionTokens.sum());
+            map.put("avg_prompt_tokens", count == 0 ? 0 : promptTokens.sum() / count);
+            map.put("avg_completion_tokens", count == 0 ? 0 : completionTokens.sum() / count);
+            return map;
+        }
+    }
+}
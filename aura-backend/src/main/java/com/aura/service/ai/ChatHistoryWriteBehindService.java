@@ -0,0 +1,399 @@
+package com.aura.service.ai;
+
+import com.aura.model.entity.ChatHistory;
+import com.aura.repository.ChatHistoryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Chat History Write-Behind Service
+ * 对话记录异步批量持久化
+ *
+ * 职责：
+ * - MemoryService 先更新短期记忆（内存），持久化写入交给本队列，不阻塞响应
+ * - 后台线程按数量（batch-size）或时间（flush-interval-ms）批量插入 chat_history（JDBC batch），
+ *   并把生成的主键回填到消息对象（短期记忆中的同一对象随之获得ID，可作为分页游标）
+ * - 批量写入后交给 SemanticMemoryIndexer 索引语义记忆（向量化调用也移出请求路径）
+ * - 队列有上限（max-backlog），写满时退化为调用方同步写入，保证不丢数据
+ * - 批量写入在一个事务内执行（全部成功或全部回滚）；失败的批次交给后台线程逐条重写，
+ *   每条最多重试 max-retries 次（指数退避），仍失败才放弃并把该消息完整记录到错误日志
+ * - 应用关闭时排空队列
+ *
+ * 锁：pendingLock 只保护队列与写入中消息之间的移动和读取方的快照复制；writeLock 只在一次数据库写入
+ * （一个批次或一条消息）期间持有，重试的退避等待不持有任何锁，数据库故障时读取方不会被阻塞。
+ */
+@Service
+@Slf4j
+public class ChatHistoryWriteBehindService {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO chat_history (session_id, role, message, context_data, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatHistoryRepository chatHistoryRepository;
+    private final SemanticMemoryIndexer semanticMemoryIndexer;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+
+    private final BlockingQueue<ChatHistory> backlog;
+    // Drained from the backlog but not yet persisted or given up on (still visible to readers)
+    private final List<ChatHistory> inFlight = new ArrayList<>();
+    private final Object pendingLock = new Object();
+    // Held for one database write at a time, never across a retry backoff
+    private final Object writeLock = new Object();
+    // Messages of failed batches, retried one by one on the writer thread
+    private final Queue<ChatHistory> retries = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Metrics
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder synchronousWrites = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retriedRows = new LongAdder();
+    private final LongAdder droppedRows = new LongAdder();
+
+    public ChatHistoryWriteBehindService(JdbcTemplate jdbcTemplate,
+            ChatHistoryRepository chatHistoryRepository,
+            SemanticMemoryIndexer semanticMemoryIndexer,
+            TransactionTemplate transactionTemplate,
+            @Value("${app.ai.chat-persistence.write-behind:true}") boolean enabled,
+            @Value("${app.ai.chat-persistence.batch-size:100}") int batchSize,
+            @Value("${app.ai.chat-persistence.flush-interval-ms:500}") long flushIntervalMs,
+            @Value("${app.ai.chat-persistence.max-backlog:10000}") int maxBacklog,
+            @Value("${app.ai.chat-persistence.max-retries:3}") int maxRetries,
+            @Value("${app.ai.chat-persistence.retry-backoff-ms:200}") long retryBackoffMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chatHistoryRepository = chatHistoryRepository;
+        this.semanticMemoryIndexer = semanticMemoryIndexer;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.backlog = new ArrayBlockingQueue<>(maxBacklog);
+
+        this.writer = new Thread(this::writeLoop, "chat-history-writer");
+        this.writer.setDaemon(true);
+        if (enabled) {
+            this.writer.start();
+            log.info("Chat history write-behind started: batch size={}, flush interval={}ms, max backlog={}",
+                    batchSize, flushIntervalMs, maxBacklog);
+        }
+    }
+
+    /**
+     * Persist a chat message (asynchronously when the backlog has room)
+     * 持久化对话消息（队列未满时异步写入）
+     */
+    public void enqueue(ChatHistory chatHistory) {
+        if (enabled && running && backlog.offer(chatHistory)) {
+            enqueued.increment();
+            return;
+        }
+
+        // Disabled, shutting down or backlog full: write synchronously (backpressure)
+        synchronousWrites.increment();
+        chatHistoryRepository.save(chatHistory);
+        semanticMemoryIndexer.onPersisted(List.of(chatHistory));
+    }
+
+    /**
+     * Write all queued messages now
+     * 立即写入队列中的全部消息（例如需要消息ID时）
+     *
+     * Waits for a write in progress, but not for retries of failed batches: those stay with the
+     * writer thread (and visible to loadWithPending) instead of blocking the caller through backoffs.
+     */
+    public void flush() {
+        List<ChatHistory> batch;
+        while (!(batch = take()).isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * Drop a session's unwritten messages and wait for a write in progress
+     * 丢弃会话尚未写入的消息（删除会话前调用，之后不会再有该会话的消息写入数据库）
+     */
+    public void discardSession(String sessionId) {
+        synchronized (pendingLock) {
+            backlog.removeIf(chat -> sessionId.equals(chat.getSessionId()));
+            inFlight.removeIf(chat -> sessionId.equals(chat.getSessionId()));
+        }
+        retries.removeIf(chat -> sessionId.equals(chat.getSessionId()));
+        // Every write checks under writeLock that its messages are still pending
+        synchronized (writeLock) {
+            log.debug("Discarded unwritten chat messages of session {}", sessionId);
+        }
+    }
+
+    /**
+     * Load a session's persisted messages plus those not yet written
+     * 加载会话历史（数据库 + 队列和写入中尚未提交的消息）
+     *
+     * Unwritten messages are copied before the load: a message committed in between is then
+     * returned by the loader as well and skipped by ID, so none falls between the two views.
+     * Only the copy holds a lock; the load never waits for a database write.
+     *
+     * @param loader Loads persisted messages in chronological order
+     */
+    public List<ChatHistory> loadWithPending(String sessionId, Supplier<List<ChatHistory>> loader) {
+        List<ChatHistory> pending = new ArrayList<>();
+        synchronized (pendingLock) {
+            inFlight.stream().filter(chat -> sessionId.equals(chat.getSessionId())).forEach(pending::add);
+            backlog.stream().filter(chat -> sessionId.equals(chat.getSessionId())).forEach(pending::add);
+        }
+
+        List<ChatHistory> messages = new ArrayList<>(loader.get());
+        Set<Long> loadedIds = new HashSet<>();
+        messages.forEach(chat -> loadedIds.add(chat.getId()));
+        pending.stream()
+                .filter(chat -> chat.getId() == null || !loadedIds.contains(chat.getId()))
+                .forEach(messages::add);
+        return messages;
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                retryFailed(true);
+
+                // Wait until a full batch is queued or the flush interval has passed
+                long deadline = System.currentTimeMillis() + flushIntervalMs;
+                while (backlog.size() < batchSize && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(Math.min(50, flushIntervalMs));
+                }
+                if (backlog.isEmpty()) {
+                    continue;
+                }
+                writeBatch(take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Move up to one batch from the backlog to the in-flight list
+     */
+    private List<ChatHistory> take() {
+        List<ChatHistory> batch = new ArrayList<>(batchSize);
+        synchronized (pendingLock) {
+            backlog.drainTo(batch, batchSize);
+            inFlight.addAll(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Remove resolved (persisted or given up) messages from the in-flight list
+     */
+    private void finish(List<ChatHistory> messages) {
+        Set<ChatHistory> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        done.addAll(messages);
+        synchronized (pendingLock) {
+            inFlight.removeIf(done::contains);
+        }
+    }
+
+    /**
+     * Messages of the list still pending (not discarded with their session)
+     */
+    private List<ChatHistory> stillPending(List<ChatHistory> messages) {
+        Set<ChatHistory> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        synchronized (pendingLock) {
+            pending.addAll(inFlight);
+        }
+        return messages.stream().filter(pending::contains).toList();
+    }
+
+    /**
+     * Write a batch in one transaction; a failed batch is handed to the writer thread for row-by-row retries
+     */
+    private void writeBatch(List<ChatHistory> batch) {
+        List<ChatHistory> rows;
+        synchronized (writeLock) {
+            rows = stillPending(batch);
+            if (rows.isEmpty()) {
+                return;
+            }
+            try {
+                // One transaction: a failed batch leaves no rows behind, so the retries cannot duplicate any
+                transactionTemplate.executeWithoutResult(status -> insertBatch(rows));
+            } catch (Exception e) {
+                // IDs may have been assigned before a failed commit
+                rows.forEach(chat -> chat.setId(null));
+                retries.addAll(rows);
+                failures.increment();
+                log.warn("Failed to persist chat history batch ({} messages), retrying them one by one: {}",
+                        rows.size(), e.getMessage());
+                return;
+            }
+        }
+        batches.increment();
+        written.add(rows.size());
+        finish(rows);
+        semanticMemoryIndexer.onPersisted(rows);
+        log.debug("Persisted {} chat messages in one batch", rows.size());
+    }
+
+    /**
+     * Retry the messages of failed batches one by one
+     *
+     * @param backoff Retry up to max-retries times with exponential backoff (false: one attempt each)
+     */
+    private void retryFailed(boolean backoff) {
+        ChatHistory chat;
+        while ((chat = retries.poll()) != null) {
+            boolean saved = saveWithRetries(chat, backoff ? maxRetries : 0);
+            finish(List.of(chat));
+            if (saved) {
+                semanticMemoryIndexer.onPersisted(List.of(chat));
+            }
+        }
+    }
+
+    /**
+     * JDBC batch insert that assigns the generated IDs back to the messages
+     */
+    private void insertBatch(List<ChatHistory> batch) {
+        Long[] ids = jdbcTemplate.execute((ConnectionCallback<Long[]>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (ChatHistory chat : batch) {
+                    ps.setString(1, chat.getSessionId());
+                    ps.setString(2, chat.getRole());
+                    ps.setString(3, chat.getMessage());
+                    ps.setString(4, chat.getContextDataJson());
+                    ps.setTimestamp(5, Timestamp.valueOf(chat.getCreatedAt()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                Long[] generated = new Long[batch.size()];
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (int i = 0; i < generated.length && keys.next(); i++) {
+                        generated[i] = keys.getLong(1);
+                    }
+                }
+                return generated;
+            }
+        });
+        // Assigned only after the insert succeeded (a failed batch falls back to save(), which sets the ID)
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).setId(ids[i]);
+        }
+    }
+
+    /**
+     * Save one message, retrying with exponential backoff (the backoff holds no lock)
+     *
+     * @return false if the message was given up on (logged in full) or discarded with its session
+     */
+    private boolean saveWithRetries(ChatHistory chat, int maxRetries) {
+        long backoffMs = retryBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                synchronized (writeLock) {
+                    if (stillPending(List.of(chat)).isEmpty()) {
+                        return false;
+                    }
+                    chatHistoryRepository.save(chat);
+                }
+                retriedRows.increment();
+                written.add(1);
+                return true;
+            } catch (Exception e) {
+                if (attempt > maxRetries) {
+                    droppedRows.increment();
+                    log.error("Giving up on chat message after {} attempts: sessionId={}, role={}, createdAt={}, "
+                                    + "message={}, contextData={}", attempt, chat.getSessionId(), chat.getRole(),
+                            chat.getCreatedAt(), chat.getMessage(), chat.getContextDataJson(), e);
+                    return false;
+                }
+                log.warn("Failed to save chat message (attempt {}/{}), retrying in {}ms: {}",
+                        attempt, maxRetries + 1, backoffMs, e.getMessage());
+                sleep(backoffMs);
+                backoffMs *= 2;
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // Shutting down: keep retrying without waiting, then let the caller see the interrupt
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Drain whatever is left before the datasource goes away (one attempt per failed message)
+        int remaining = backlog.size() + retries.size();
+        flush();
+        retryFailed(false);
+        log.info("Chat history write-behind stopped, drained {} queued messages", remaining);
+    }
+
+    /**
+     * Get write-behind statistics
+     * 获取异步持久化统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("backlog", backlog.size());
+        stats.put("retry_backlog", retries.size());
+        stats.put("enqueued", enqueued.sum());
+        stats.put("written", written.sum());
+        stats.put("batches", batches.sum());
+        stats.put("synchronous_writes", synchronousWrites.sum());
+        stats.put("failures", failures.sum());
+        stats.put("retried_rows", retriedRows.sum());
+        stats.put("dropped_rows", droppedRows.sum());
+        return stats;
+    }
+}
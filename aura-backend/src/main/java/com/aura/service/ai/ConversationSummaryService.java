@@ -0,0 +1,279 @@
+package com.aura.service.ai;
+
+import com.aura.config.AgentProperties;
+import com.aura.model.entity.ChatHistory;
+import com.aura.model.entity.ConversationSummary;
+import com.aura.repository.ConversationSummaryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conversation Summary Service
+ * 会话滚动摘要服务
+ *
+ * 职责：
+ * - 每轮对话结束后在后台检查会话：未被摘要的消息超过 trigger-tokens 时，
+ *   将较早的消息（保留最近 keep-recent-messages 条）与已有摘要合并为新的摘要
+ * - 摘要存入 conversation_summary 表，并缓存最近使用的会话
+ * - Agent 收到「摘要 + 摘要之后的最近消息」，长会话的Prompt大小保持基本恒定
+ *
+ * 摘要以消息创建时间（秒级，与 chat_history.created_at 一致）为游标，
+ * 折叠边界总是落在两个不同的秒之间，保证内存中和数据库中的消息判断一致。
+ */
+@Service
+@Slf4j
+public class ConversationSummaryService {
+
+    private static final String SUMMARY_SYSTEM_PROMPT = """
+            You maintain a running summary of a customer conversation with Aura Quiet Living's assistant.
+            Merge the existing summary and the new conversation turns into one updated summary.
+
+            Keep:
+            - Products discussed, the customer's preferences, needs and constraints
+            - Order numbers, emails and other identifiers the customer provided
+            - Questions answered, decisions made and anything still unresolved
+
+            Rules:
+            - Write in the language of the conversation
+            - Be factual and compact, no greetings or filler
+            - Never invent details that are not in the conversation
+            """;
+
+    private final ConversationSummaryRepository conversationSummaryRepository;
+    private final MemoryService memoryService;
+    private final PromptBudgetService promptBudgetService;
+    private final AgentChatService agentChatService;
+    private final ChatClient chatClient;
+    private final ThreadPoolTaskExecutor aiTaskExecutor;
+    private final boolean enabled;
+    private final int triggerTokens;
+    private final int keepRecentMessages;
+    private final int scanMessages;
+
+    // Recently used sessions' summaries (empty Optional = no summary yet)
+    private final Map<String, Optional<Summary>> summaries;
+    // Session -> token of the summarization running for it; clear() removes the token so that
+    // a task started before the clear cannot save (or unmark a newer task)
+    private final Map<String, Object> inProgress = new ConcurrentHashMap<>();
+    // Makes "token still current? then save" atomic with respect to clear()
+    private final Object saveLock = new Object();
+
+    // Metrics
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder summarizations = new LongAdder();
+    private final LongAdder foldedMessages = new LongAdder();
+    private final LongAdder foldedTokens = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ConversationSummaryService(ConversationSummaryRepository conversationSummaryRepository,
+            MemoryService memoryService,
+            PromptBudgetService promptBudgetService,
+            AgentChatService agentChatService,
+            ChatClient chatClient,
+            @Qualifier("aiTaskExecutor") ThreadPoolTaskExecutor aiTaskExecutor,
+            @Value("${app.ai.summary.enabled:true}") boolean enabled,
+            @Value("${app.ai.summary.trigger-tokens:2000}") int triggerTokens,
+            @Value("${app.ai.summary.keep-recent-messages:6}") int keepRecentMessages,
+            @Value("${app.ai.summary.scan-messages:50}") int scanMessages,
+            @Value("${app.ai.summary.cache-size:10000}") int cacheSize) {
+        this.conversationSummaryRepository = conversationSummaryRepository;
+        this.memoryService = memoryService;
+        this.promptBudgetService = promptBudgetService;
+        this.agentChatService = agentChatService;
+        this.chatClient = chatClient;
+        this.aiTaskExecutor = aiTaskExecutor;
+        this.enabled = enabled;
+        this.triggerTokens = triggerTokens;
+        this.keepRecentMessages = keepRecentMessages;
+        this.scanMessages = scanMessages;
+        this.summaries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Optional<Summary>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Get the running summary of a session
+     * 获取会话摘要
+     *
+     * @return Summary, or null if the session has not been summarized
+     */
+    public Summary getSummary(String sessionId) {
+        if (!enabled) {
+            return null;
+        }
+        Optional<Summary> cached = summaries.get(sessionId);
+        if (cached == null) {
+            try {
+                cached = conversationSummaryRepository.findById(sessionId)
+                        .map(entity -> new Summary(entity.getSummary(), entity.getCoveredUntil(),
+                                entity.getCoveredMessages()));
+                summaries.put(sessionId, cached);
+            } catch (Exception e) {
+                log.error("Failed to load conversation summary for session {}: {}", sessionId, e.getMessage(), e);
+                return null;
+            }
+        }
+        return cached.orElse(null);
+    }
+
+    /**
+     * Schedule a summary check after a completed turn (non-blocking)
+     * 每轮对话结束后在后台检查是否需要摘要
+     */
+    public void onTurnCompleted(String sessionId) {
+        Object token = new Object();
+        if (!enabled || inProgress.putIfAbsent(sessionId, token) != null) {
+            return;
+        }
+        try {
+            aiTaskExecutor.execute(() -> {
+                try {
+                    summarize(sessionId, token);
+                } catch (Exception e) {
+                    failures.increment();
+                    log.error("Failed to summarize session {}: {}", sessionId, e.getMessage(), e);
+                } finally {
+                    inProgress.remove(sessionId, token);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // Executor saturated: the next turn checks again
+            inProgress.remove(sessionId, token);
+            rejected.increment();
+        }
+    }
+
+    /**
+     * Forget a session's summary
+     * 删除会话摘要（清空会话历史时调用）
+     */
+    public void clear(String sessionId) {
+        synchronized (saveLock) {
+            // A summarization still running for the old history must not write its result
+            inProgress.remove(sessionId);
+            summaries.remove(sessionId);
+            if (conversationSummaryRepository.existsById(sessionId)) {
+                conversationSummaryRepository.deleteById(sessionId);
+            }
+        }
+    }
+
+    private void summarize(String sessionId, Object token) {
+        checks.increment();
+        Summary current = getSummary(sessionId);
+
+        // Messages not yet covered by the summary
+        List<ChatHistory> pending = memoryService.getRecentHistory(sessionId, scanMessages).stream()
+                .filter(message -> current == null || !current.covers(message))
+                .toList();
+        int pendingTokens = pending.stream().mapToInt(message -> promptBudgetService.countTokens(message.getMessage()))
+                .sum();
+        if (pendingTokens < triggerTokens) {
+            return;
+        }
+
+        // Fold everything but the most recent turns; the boundary must fall between two different seconds
+        int cut = pending.size() - keepRecentMessages;
+        while (cut > 0 && coveredUntil(pending.get(cut - 1)).equals(coveredUntil(pending.get(cut)))) {
+            cut--;
+        }
+        if (cut <= 0) {
+            return;
+        }
+        List<ChatHistory> fold = pending.subList(0, cut);
+
+        StringBuilder turns = new StringBuilder();
+        if (current != null) {
+            turns.append("Existing summary:\n").append(current.text()).append("\n\n");
+        }
+        turns.append("New conversation turns:\n");
+        for (ChatHistory message : fold) {
+            turns.append("assistant".equals(message.getRole()) ? "Assistant: " : "User: ")
+                    .append(message.getMessage()).append('\n');
+        }
+
+        String text = agentChatService.call(AgentProperties.SUMMARY,
+                chatClient.prompt().system(SUMMARY_SYSTEM_PROMPT).user(turns.toString()));
+        ConversationSummary entity = new ConversationSummary();
+        entity.setSessionId(sessionId);
+        entity.setSummary(text);
+        entity.setCoveredUntil(coveredUntil(fold.get(fold.size() - 1)));
+        entity.setCoveredMessages((current != null ? current.coveredMessages() : 0) + fold.size());
+        synchronized (saveLock) {
+            if (inProgress.get(sessionId) != token) {
+                log.info("Session {} was cleared while summarizing, discarding summary", sessionId);
+                return;
+            }
+            conversationSummaryRepository.save(entity);
+            summaries.put(sessionId, Optional.of(
+                    new Summary(text, entity.getCoveredUntil(), entity.getCoveredMessages())));
+        }
+
+        int tokens = fold.stream().mapToInt(message -> promptBudgetService.countTokens(message.getMessage())).sum();
+        summarizations.increment();
+        foldedMessages.add(fold.size());
+        foldedTokens.add(tokens);
+        log.info("Summarized session {}: folded {} messages ({} tokens) into {} tokens",
+                sessionId, fold.size(), tokens, promptBudgetService.countTokens(text));
+    }
+
+    private static LocalDateTime coveredUntil(ChatHistory message) {
+        return message.getCreatedAt().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    /**
+     * Get summarization statistics
+     * 获取会话摘要统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trigger_tokens", triggerTokens);
+        stats.put("cached_sessions", summaries.size());
+        stats.put("in_progress", inProgress.size());
+        stats.put("checks", checks.sum());
+        stats.put("summarizations", summarizations.sum());
+        stats.put("folded_messages", foldedMessages.sum());
+        stats.put("folded_tokens", foldedTokens.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    /**
+     * Running summary of a session
+     *
+     * @param text            Summary text
+     * @param coveredUntil    created_at (seconds) of the last message folded into the summary
+     * @param coveredMessages Number of messages folded so far
+     */
+    public record Summary(String text, LocalDateTime coveredUntil, int coveredMessages) {
+
+        /**
+         * Whether a message is already part of the summary
+         */
+        public boolean covers(ChatHistory message) {
+            return message.getCreatedAt() != null
+                    && !message.getCreatedAt().truncatedTo(ChronoUnit.SECONDS).isAfter(coveredUntil);
+        }
+    }
+}
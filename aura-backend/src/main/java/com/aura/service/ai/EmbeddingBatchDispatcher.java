@@ -0,0 +1,303 @@
+package com.aura.service.ai;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedding Batch Dispatcher
+ * 查询向量化微批处理
+ *
+ * 职责：
+ * - 收集并发会话的单条查询向量化请求，等待 linger-ms 或凑满 max-batch-size 后
+ *   合并为一次 EmbeddingModel 批量调用，再把结果分发给各个等待的调用方
+ * - 通过 asEmbeddingModel() 提供给 SimpleVectorStore，使 RAGService.searchSimilar 和
+ *   MemoryService.searchRelevantMemory 的查询向量化自动走批处理
+ * - addDocuments() 先一次性批量向量化多个文档再写入 VectorStore
+ *   （SimpleVectorStore.add 默认逐个文档调用 EmbeddingModel）
+ * - 调用方最多等待 timeout；关闭时所有未完成的请求立即失败
+ */
+@Service
+@Slf4j
+public class EmbeddingBatchDispatcher {
+
+    private final EmbeddingModel embeddingModel;
+    private final boolean enabled;
+    private final long lingerNanos;
+    private final int maxBatchSize;
+    private final Duration timeout;
+
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    // Document ID -> embedding computed ahead of VectorStore.add (see addDocuments)
+    private final Map<String, float[]> precomputed = new ConcurrentHashMap<>();
+    private final ExecutorService batchExecutor;
+    private final Thread collector;
+    private volatile boolean running = true;
+
+    // Metrics
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAccumulator largestBatch = new LongAccumulator(Math::max, 0);
+
+    public EmbeddingBatchDispatcher(EmbeddingModel embeddingModel,
+            @Value("${app.ai.embedding-batch.enabled:true}") boolean enabled,
+            @Value("${app.ai.embedding-batch.linger-ms:5}") long lingerMs,
+            @Value("${app.ai.embedding-batch.max-batch-size:32}") int maxBatchSize,
+            @Value("${app.ai.embedding-batch.max-concurrent-batches:4}") int maxConcurrentBatches,
+            @Value("${app.ai.embedding-batch.timeout:30s}") Duration timeout) {
+        this.embeddingModel = embeddingModel;
+        this.enabled = enabled;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.maxBatchSize = maxBatchSize;
+        this.timeout = timeout;
+
+        // Dedicated pool: callers of embed() may themselves run on aiTaskExecutor
+        AtomicInteger threadCount = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(maxConcurrentBatches, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.collector = new Thread(this::collectLoop, "embedding-dispatcher");
+        this.collector.setDaemon(true);
+        if (enabled) {
+            this.collector.start();
+            log.info("Embedding batch dispatcher started: linger={}ms, max batch={}, concurrent batches={}",
+                    lingerMs, maxBatchSize, maxConcurrentBatches);
+        }
+    }
+
+    /**
+     * Embed a single query, batched with concurrent requests
+     * 向量化单条查询（与并发请求合并批量调用）
+     */
+    public float[] embed(String text) {
+        if (!enabled) {
+            return embeddingModel.embed(text);
+        }
+
+        requests.increment();
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        queue.add(new PendingEmbedding(text, future));
+        if (!running) {
+            // Shutting down: the collector may already have drained the queue
+            failPending(new ArrayList<>());
+        }
+        try {
+            return future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                failures.increment();
+                throw new IllegalStateException("Query embedding timed out after " + timeout, e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Embed several documents with one model call (bypasses the query queue)
+     * 一次调用批量向量化多条文档
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        return embeddingModel.embed(texts);
+    }
+
+    /**
+     * EmbeddingModel view whose single-text embed() goes through the dispatcher
+     * 提供给 VectorStore 使用的 EmbeddingModel（查询向量化走微批处理）
+     */
+    public EmbeddingModel asEmbeddingModel() {
+        return new BatchingEmbeddingModel();
+    }
+
+    /**
+     * Add documents to a vector store with one batched embedding call
+     * 批量向量化文档后写入向量库（一次 EmbeddingModel 调用）
+     *
+     * The store must have been built with {@link #asEmbeddingModel()}.
+     */
+    public void addDocuments(VectorStore vectorStore, List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                precomputed.put(documents.get(i).getId(), embeddings.get(i));
+            }
+            vectorStore.add(documents);
+        } finally {
+            documents.forEach(document -> precomputed.remove(document.getId()));
+        }
+    }
+
+    private void collectLoop() {
+        List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running) {
+                batch = new ArrayList<>(maxBatchSize);
+                batch.add(queue.take());
+
+                // Linger for more requests until the batch is full or the window closes
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingEmbedding next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                dispatch(batch);
+                batch = List.of();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Fail the batch being collected and everything still queued: nobody will embed them
+            failPending(new ArrayList<>(batch));
+        }
+    }
+
+    private void failPending(List<PendingEmbedding> pending) {
+        queue.drainTo(pending);
+        if (!pending.isEmpty()) {
+            log.warn("Embedding dispatcher stopped, failing {} pending queries", pending.size());
+        }
+        IllegalStateException error = new IllegalStateException("Embedding dispatcher is shutting down");
+        pending.forEach(p -> p.future().completeExceptionally(error));
+    }
+
+    private void dispatch(List<PendingEmbedding> batch) {
+        try {
+            batchExecutor.execute(() -> embedBatch(batch));
+        } catch (RejectedExecutionException e) {
+            embedBatch(batch);
+        }
+    }
+
+    private void embedBatch(List<PendingEmbedding> batch) {
+        batches.increment();
+        largestBatch.accumulate(batch.size());
+        try {
+            List<String> texts = batch.stream().map(PendingEmbedding::text).toList();
+            List<float[]> embeddings = embeddingModel.embed(texts);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(embeddings.get(i));
+            }
+            log.debug("Embedded batch of {} queries", batch.size());
+        } catch (Exception e) {
+            log.warn("Batched embedding call failed ({} queries): {}", batch.size(), e.getMessage());
+            failures.increment();
+            batch.forEach(pending -> pending.future().completeExceptionally(e));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        collector.interrupt();
+        batchExecutor.shutdown();
+        failPending(new ArrayList<>());
+    }
+
+    /**
+     * Get batching statistics
+     * 获取微批处理统计信息
+     */
+    public Map<String, Object> getStats() {
+        long requestCount = requests.sum();
+        long batchCount = batches.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("linger_ms", TimeUnit.NANOSECONDS.toMillis(lingerNanos));
+        stats.put("max_batch_size", maxBatchSize);
+        stats.put("requests", requestCount);
+        stats.put("batches", batchCount);
+        stats.put("avg_batch_size", batchCount == 0 ? 0.0 : (double) requestCount / batchCount);
+        stats.put("largest_batch", largestBatch.get());
+        stats.put("failures", failures.sum());
+        stats.put("queued", queue.size());
+        return stats;
+    }
+
+    private record PendingEmbedding(String text, CompletableFuture<float[]> future) {
+    }
+
+    /**
+     * Delegates everything to the underlying model except single-text embedding
+     */
+    private class BatchingEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            return embeddingModel.call(request);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return EmbeddingBatchDispatcher.this.embed(text);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            float[] embedding = precomputed.remove(document.getId());
+            return embedding != null ? embedding : embeddingModel.embed(document);
+        }
+
+        @Override
+        public List<float[]> embed(List<String> texts) {
+            return embeddingModel.embed(texts);
+        }
+
+        @Override
+        public List<float[]> embed(List<Document> documents, EmbeddingOptions options,
+                BatchingStrategy batchingStrategy) {
+            return embeddingModel.embed(documents, options, batchingStrategy);
+        }
+
+        @Override
+        public int dimensions() {
+            return embeddingModel.dimensions();
+        }
+    }
+}
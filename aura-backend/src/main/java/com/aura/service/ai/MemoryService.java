@@ -7,13 +7,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Memory Service
@@ -26,12 +26,17 @@ public class MemoryService {
 
     private final ChatHistoryRepository chatHistoryRepository;
     private final SimpleVectorStore semanticMemory;
+    private final ChatHistoryWriteBehindService chatHistoryWriteBehindService;
+    private final SemanticMemoryIndexer semanticMemoryIndexer;
 
-    // Short-term memory (in-memory)
-    private final Map<String, List<ChatHistory>> shortTermMemory = new ConcurrentHashMap<>();
+    // Short-term memory (in-memory, bounded by weight and idle TTL)
+    private final SessionHistoryCache shortTermMemory;
 
     /**
      * Save message to all memory layers
+     *
+     * Short-term memory is updated immediately; the MySQL insert and the
+     * semantic memory embedding are handed to the write-behind queue.
      */
     public void saveMessage(String sessionId, String role, String message, Map<String, Object> context) {
         // Create ChatHistory entity
@@ -40,63 +45,87 @@ public class MemoryService {
         chatHistory.setRole(role);
         chatHistory.setMessage(message);
         chatHistory.setContextData(context);
+        // Timestamp now so that ordering reflects the conversation, not the flush
+        chatHistory.setCreatedAt(LocalDateTime.now());
 
-        // 1. Save to long-term memory (MySQL)
-        chatHistory = chatHistoryRepository.save(chatHistory);
-
-        // Make chatHistory effectively final for lambda expression
-        final ChatHistory finalChatHistory = chatHistory;
+        // 1. Save to long-term memory (MySQL) in the background; semantic memory
+        // (vector store) is indexed afterwards by SemanticMemoryIndexer
+        chatHistoryWriteBehindService.enqueue(chatHistory);
 
         // 2. Save to short-term memory (in-memory)
-        shortTermMemory.compute(sessionId, (key, existingHistory) -> {
-            List<ChatHistory> updatedHistory = existingHistory != null ? new ArrayList<>(existingHistory)
-                    : new ArrayList<>();
-            updatedHistory.add(finalChatHistory);
-            // Keep short-term memory limited to 50 messages per session
-            if (updatedHistory.size() > 50) {
-                updatedHistory = updatedHistory.subList(updatedHistory.size() - 50, updatedHistory.size());
-            }
-            return updatedHistory;
-        });
-
-        // 3. Save to semantic memory (vector store)
-        try {
-            // Create metadata map
-            Map<String, Object> metadata = Map.of(
-                    "sessionId", sessionId,
-                    "role", role,
-                    "timestamp", chatHistory.getCreatedAt().toString());
-
-            // Create document using constructor
-            Document document = new Document(chatHistory.getMessage(), metadata);
-
-            // Add document to vector store (accepts List<Document>)
-            semanticMemory.add(List.of(document));
-        } catch (Exception e) {
-            log.error("Failed to save to semantic memory: {}", e.getMessage(), e);
-        }
+        // Enqueued first so that a concurrent reload always sees this message
+        shortTermMemory.append(sessionId, chatHistory);
 
         log.info("Message saved to memory layers for session: {}", sessionId);
     }
 
     /**
-     * Get recent conversation history
+     * Get recent conversation history (chronological order)
      */
     public List<ChatHistory> getRecentHistory(String sessionId, int limit) {
         // Try to get from short-term memory first (faster)
-        List<ChatHistory> recentHistory = shortTermMemory.get(sessionId);
+        if (limit <= shortTermMemory.getMaxMessages()) {
+            List<ChatHistory> recentHistory = shortTermMemory.get(sessionId, limit);
+            if (recentHistory != null) {
+                return recentHistory;
+            }
+        }
+
+        // Cache miss (or more than short-term memory holds): keyset query on
+        // long-term memory (MySQL), then warm short-term memory with the result
+        long appendCount = shortTermMemory.appendCount(sessionId);
+        int loadLimit = Math.max(limit, shortTermMemory.getMaxMessages());
+        List<ChatHistory> history = loadRecentHistory(sessionId, loadLimit);
+        shortTermMemory.install(sessionId, history, appendCount);
+        return history.subList(Math.max(0, history.size() - limit), history.size());
+    }
+
+    /**
+     * Get the newest page of history with message IDs assigned
+     * 获取最新一页历史（保证每条消息都有ID，可作为下一页的游标）
+     *
+     * Messages still queued for writing have no ID yet; the queue is flushed first in that case.
+     */
+    public List<ChatHistory> getLatestPage(String sessionId, int limit) {
+        List<ChatHistory> page = getRecentHistory(sessionId, limit);
+        if (page.stream().anyMatch(chat -> chat.getId() == null)) {
+            chatHistoryWriteBehindService.flush();
+        }
+        return page;
+    }
 
-        if (recentHistory != null && recentHistory.size() >= limit) {
-            // Return last 'limit' messages from short-term memory
-            int startIndex = Math.max(0, recentHistory.size() - limit);
-            return recentHistory.subList(startIndex, recentHistory.size());
+    /**
+     * Get history older than a given message (keyset pagination)
+     * 获取指定消息之前的历史（键集分页，按时间正序）
+     *
+     * @param beforeId ID of the oldest message the caller already has
+     */
+    public List<ChatHistory> getHistoryBefore(String sessionId, Long beforeId, int limit) {
+        ChatHistory cursor = chatHistoryRepository.findById(beforeId)
+                .filter(chat -> sessionId.equals(chat.getSessionId()))
+                .orElse(null);
+        if (cursor == null) {
+            return Collections.emptyList();
         }
 
-        // Fall back to long-term memory (MySQL)
-        return chatHistoryRepository.findTop10BySessionIdOrderByCreatedAtDesc(sessionId)
-                .stream()
-                .limit(limit)
-                .collect(Collectors.toList());
+        List<ChatHistory> page = new ArrayList<>(chatHistoryRepository.findBySessionIdBefore(
+                sessionId, cursor.getCreatedAt(), cursor.getId(), PageRequest.of(0, limit)));
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * Load the last {@code limit} messages of a session in chronological order,
+     * including messages still queued for writing
+     */
+    private List<ChatHistory> loadRecentHistory(String sessionId, int limit) {
+        List<ChatHistory> history = chatHistoryWriteBehindService.loadWithPending(sessionId, () -> {
+            List<ChatHistory> recent = new ArrayList<>(
+                    chatHistoryRepository.findRecentBySessionId(sessionId, PageRequest.of(0, limit)));
+            Collections.reverse(recent);
+            return recent;
+        });
+        return history.subList(Math.max(0, history.size() - limit), history.size());
     }
 
     /**
@@ -104,6 +133,12 @@ public class MemoryService {
      */
     public List<String> searchRelevantMemory(String query, String sessionId) {
         try {
+            // Lazy indexing: load the session into semantic memory on first lookup
+            if (semanticMemoryIndexer.needsIndexing(sessionId)) {
+                chatHistoryWriteBehindService.flush();
+                semanticMemoryIndexer.ensureIndexed(sessionId);
+            }
+
             // Search semantic memory with query using non-deprecated API
             SearchRequest searchRequest = SearchRequest.builder()
                     .query(query)
@@ -139,9 +174,12 @@ public class MemoryService {
      */
     public void clearSession(String sessionId) {
         // 1. Clear short-term memory
-        shortTermMemory.remove(sessionId);
+        shortTermMemory.invalidate(sessionId);
+        semanticMemoryIndexer.forgetSession(sessionId);
 
-        // 2. Clear long-term memory
+        // 2. Clear long-term memory (drop unwritten messages and wait for a write in progress,
+        //    so none are inserted after the delete)
+        chatHistoryWriteBehindService.discardSession(sessionId);
         chatHistoryRepository.deleteBySessionId(sessionId);
 
         // 3. Note: Semantic memory doesn't support session-level deletion easily
@@ -1,5 +1,6 @@
 package com.aura.service.ai;
 
+import com.aura.model.event.ManualIndexChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -7,6 +8,7 @@ import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
@@ -26,6 +28,7 @@ public class PDFVectorizationService {
 
     private final SimpleVectorStore vectorStore;
     private final ResourceLoader resourceLoader;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Value("${app.pdf.manuals-path:classpath:manuals/}")
     private String manualsPath;
@@ -142,6 +145,7 @@ public class PDFVectorizationService {
 
         // Add to vector store
         vectorStore.add(documents);
+        eventPublisher.publishEvent(new ManualIndexChangedEvent("manual vectorized: " + productId));
 
         log.info("✅ Vectorized product {} with {} chunks", productId, chunks.size());
         return chunks.size();
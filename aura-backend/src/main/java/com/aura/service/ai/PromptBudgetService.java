@@ -0,0 +1,318 @@
+package com.aura.service.ai;
+
+import com.aura.config.AgentProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prompt Budget Service
+ * Prompt Token预算服务
+ *
+ * 职责：
+ * - 使用本地BPE分词器（jtokkit，o200k/cl100k，无网络调用）统计Prompt各部分的Token数
+ * - 按Agent的 app.agents.{agent}.prompt-tokens 预算裁剪Prompt：
+ *   系统提示词 + 上下文（产品信息、手册内容等）+ 对话历史 + 用户消息
+ * - 超出预算时按价值从低到高裁剪：
+ *   1. 丢弃最早的对话历史（保留最近 min-history-messages 条，历史中的系统消息如会话摘要保留）
+ *   2. 截断上下文部分（优先级低的先截断，保留 min-section-tokens；
+ *      JSON 数组（如产品信息）按完整元素截断，结果仍是合法 JSON）
+ *   3. 丢弃剩余对话历史
+ *   4. 继续截断上下文部分
+ *   系统提示词和用户消息不裁剪
+ * - 每次调用记录各部分Token数日志并统计
+ *
+ * 注：工具Schema的Token不在预算内（见 ToolTokenReportService）。
+ */
+@Service
+@Slf4j
+public class PromptBudgetService {
+
+    // Per-message framing tokens in the chat completion format (role, separators)
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    private static final String TRUNCATION_MARKER = "\n...[truncated]";
+
+    private final AgentProperties agentProperties;
+    private final ObjectMapper objectMapper;
+    private final Encoding encoding;
+    private final int minHistoryMessages;
+    private final int minSectionTokens;
+
+    // Metrics per agent
+    private final Map<String, AgentStats> stats = new ConcurrentHashMap<>();
+
+    public PromptBudgetService(AgentProperties agentProperties, ObjectMapper objectMapper,
+            @Value("${app.ai.prompt-budget.encoding:o200k_base}") String encodingName,
+            @Value("${app.ai.prompt-budget.min-history-messages:2}") int minHistoryMessages,
+            @Value("${app.ai.prompt-budget.min-section-tokens:200}") int minSectionTokens) {
+        this.agentProperties = agentProperties;
+        this.objectMapper = objectMapper;
+        EncodingType encodingType = EncodingType.fromName(encodingName)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown tokenizer encoding: " + encodingName));
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(encodingType);
+        this.minHistoryMessages = minHistoryMessages;
+        this.minSectionTokens = minSectionTokens;
+    }
+
+    /**
+     * Count tokens of a text
+     */
+    public int countTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokens(text);
+    }
+
+    /**
+     * Truncate a text to at most {@code maxTokens} tokens (marker included)
+     */
+    public String truncate(String text, int maxTokens) {
+        if (countTokens(text) <= maxTokens) {
+            return text;
+        }
+        int markerTokens = countTokens(TRUNCATION_MARKER);
+        if (maxTokens <= markerTokens) {
+            return "";
+        }
+        EncodingResult kept = encoding.encode(text, maxTokens - markerTokens);
+        return encoding.decode(kept.getTokens()) + TRUNCATION_MARKER;
+    }
+
+    /**
+     * Truncate a context section; JSON arrays keep whole elements so the result stays valid JSON
+     */
+    private String truncateSection(String text, int maxTokens) {
+        if (countTokens(text) <= maxTokens) {
+            return text;
+        }
+        String trimmed = text.strip();
+        if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+            try {
+                return truncateJsonArray(objectMapper.readTree(trimmed), maxTokens);
+            } catch (JsonProcessingException e) {
+                log.debug("Section looks like a JSON array but does not parse, truncating as text");
+            }
+        }
+        return truncate(text, maxTokens);
+    }
+
+    /**
+     * Keep the leading array elements that fit in {@code maxTokens}
+     */
+    private String truncateJsonArray(JsonNode array, int maxTokens) throws JsonProcessingException {
+        StringBuilder json = new StringBuilder("[");
+        int tokens = countTokens("[]");
+        for (JsonNode element : array) {
+            String elementJson = objectMapper.writeValueAsString(element);
+            int elementTokens = countTokens(elementJson) + (json.length() > 1 ? 1 : 0);
+            if (tokens + elementTokens > maxTokens) {
+                break;
+            }
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(elementJson);
+            tokens += elementTokens;
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Fit a prompt into the agent's token budget
+     * 按Agent的Token预算组装Prompt
+     *
+     * @param agent        Agent key (see {@link AgentProperties})
+     * @param systemPrompt System prompt (never trimmed, may be null)
+     * @param context      Context sections in priority order, highest first (e.g. product info, manual excerpts)
+     * @param history      Conversation history (chronological)
+     * @param userMessage  Current user message (never trimmed)
+     * @return Trimmed context sections and history
+     */
+    public AssembledPrompt assemble(String agent, String systemPrompt, Map<String, String> context,
+            List<Message> history, String userMessage) {
+        Integer configured = agentProperties.get(agent).getPromptTokens();
+        int budget = configured != null ? configured : Integer.MAX_VALUE;
+
+        int systemTokens = systemPrompt != null ? countTokens(systemPrompt) + MESSAGE_OVERHEAD_TOKENS : 0;
+        int userTokens = countTokens(userMessage) + MESSAGE_OVERHEAD_TOKENS;
+
+        Map<String, String> sections = new LinkedHashMap<>(context);
+        Map<String, Integer> sectionTokens = new LinkedHashMap<>();
+        sections.forEach((name, text) -> sectionTokens.put(name, countTokens(text)));
+
+        List<Message> messages = new ArrayList<>(history);
+        List<Integer> messageTokens = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            messageTokens.add(countTokens(message.getText()) + MESSAGE_OVERHEAD_TOKENS);
+        }
+
+        int originalTotal = systemTokens + userTokens + sum(sectionTokens.values()) + sum(messageTokens);
+        int total = originalTotal;
+        int droppedMessages = 0;
+        int truncatedSections = 0;
+
+        // 1. Drop the oldest history, keeping the most recent turns
+        while (total > budget && messages.size() > minHistoryMessages && hasTurn(messages)) {
+            total -= dropOldest(messages, messageTokens, true);
+            droppedMessages++;
+        }
+
+        // 2. Truncate context sections, lowest priority first, down to a useful minimum
+        if (total > budget) {
+            int[] result = truncateSections(sections, sectionTokens, total - budget, minSectionTokens);
+            total -= result[0];
+            truncatedSections += result[1];
+        }
+
+        // 3. Drop the remaining history
+        while (total > budget && !messages.isEmpty()) {
+            total -= dropOldest(messages, messageTokens, false);
+            droppedMessages++;
+        }
+
+        // 4. Truncate context sections further
+        if (total > budget) {
+            int[] result = truncateSections(sections, sectionTokens, total - budget, 0);
+            total -= result[0];
+            truncatedSections += result[1];
+        }
+
+        if (total > budget) {
+            log.warn("Prompt for {} exceeds its budget even after trimming: {} > {} tokens "
+                    + "(system={}, user={})", agent, total, budget, systemTokens, userTokens);
+        }
+
+        log.info("Prompt tokens [{}]: system={}, context={}, history={} ({} messages), user={}, total={}{}{}",
+                agent, systemTokens, sectionTokens, sum(messageTokens), messages.size(), userTokens, total,
+                configured != null ? "/" + configured : "",
+                total < originalTotal ? " (trimmed from " + originalTotal + ", dropped " + droppedMessages
+                        + " messages, truncated " + truncatedSections + " sections)" : "");
+
+        stats.computeIfAbsent(agent, key -> new AgentStats())
+                .record(total, originalTotal - total, droppedMessages, truncatedSections);
+        return new AssembledPrompt(sections, messages, total);
+    }
+
+    /**
+     * Drop the oldest history message
+     *
+     * @param keepSystem Skip system messages (e.g. the conversation summary)
+     * @return Tokens removed
+     */
+    private static int dropOldest(List<Message> messages, List<Integer> messageTokens, boolean keepSystem) {
+        int index = 0;
+        while (keepSystem && messages.get(index).getMessageType() == MessageType.SYSTEM) {
+            index++;
+        }
+        messages.remove(index);
+        return messageTokens.remove(index);
+    }
+
+    private static boolean hasTurn(List<Message> messages) {
+        return messages.stream().anyMatch(message -> message.getMessageType() != MessageType.SYSTEM);
+    }
+
+    /**
+     * Truncate sections from the last (lowest priority) to the first
+     *
+     * @param excess Tokens to remove
+     * @param floor  Minimum tokens to keep per section
+     * @return {tokens removed, sections truncated}
+     */
+    private int[] truncateSections(Map<String, String> sections, Map<String, Integer> sectionTokens,
+            int excess, int floor) {
+        List<String> names = new ArrayList<>(sections.keySet());
+        int removed = 0;
+        int truncated = 0;
+        for (int i = names.size() - 1; i >= 0 && removed < excess; i--) {
+            String name = names.get(i);
+            int tokens = sectionTokens.get(name);
+            int target = Math.max(floor, tokens - (excess - removed));
+            if (target >= tokens) {
+                continue;
+            }
+            String text = truncateSection(sections.get(name), target);
+            int newTokens = countTokens(text);
+            sections.put(name, text);
+            sectionTokens.put(name, newTokens);
+            removed += tokens - newTokens;
+            truncated++;
+        }
+        return new int[] { removed, truncated };
+    }
+
+    private static int sum(Iterable<Integer> values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Get prompt budget statistics per agent
+     * 获取每个Agent的Prompt Token统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        stats.forEach((agent, agentStats) -> {
+            Integer budget = agentProperties.get(agent).getPromptTokens();
+            long prompts = agentStats.prompts.sum();
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("budget_tokens", budget);
+            entry.put("prompts", prompts);
+            entry.put("avg_prompt_tokens", prompts == 0 ? 0.0 : (double) agentStats.tokens.sum() / prompts);
+            entry.put("trimmed_prompts", agentStats.trimmedPrompts.sum());
+            entry.put("tokens_trimmed", agentStats.tokensTrimmed.sum());
+            entry.put("dropped_history_messages", agentStats.droppedMessages.sum());
+            entry.put("truncated_sections", agentStats.truncatedSections.sum());
+            result.put(agent, entry);
+        });
+        return result;
+    }
+
+    /**
+     * Prompt parts after applying the budget
+     *
+     * @param context     Context sections (possibly truncated), same order as given
+     * @param history     Remaining history messages (mutable copy)
+     * @param totalTokens Estimated prompt tokens
+     */
+    public record AssembledPrompt(Map<String, String> context, List<Message> history, int totalTokens) {
+    }
+
+    private static class AgentStats {
+        private final LongAdder prompts = new LongAdder();
+        private final LongAdder tokens = new LongAdder();
+        private final LongAdder trimmedPrompts = new LongAdder();
+        private final LongAdder tokensTrimmed = new LongAdder();
+        private final LongAdder droppedMessages = new LongAdder();
+        private final LongAdder truncatedSections = new LongAdder();
+
+        private void record(int total, int trimmed, int dropped, int truncated) {
+            prompts.increment();
+            tokens.add(total);
+            if (trimmed > 0) {
+                trimmedPrompts.increment();
+                tokensTrimmed.add(trimmed);
+            }
+            droppedMessages.add(dropped);
+            truncatedSections.add(truncated);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.aura.service.ai;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Query Embedding Service
+ * 查询向量化服务
+ *
+ * 职责：
+ * - 为用户查询生成 embedding（用于语义缓存等）
+ * - 缓存最近的查询向量，同一轮对话中多处使用同一查询时只调用一次 EmbeddingModel
+ * - 并发的相同查询合并为一次 EmbeddingModel 调用，不同查询经 EmbeddingBatchDispatcher 批量向量化
+ */
+@Service
+@Slf4j
+public class QueryEmbeddingService {
+
+    private final EmbeddingBatchDispatcher embeddingBatchDispatcher;
+    private final SingleFlightService singleFlightService;
+    private final Map<String, float[]> recentEmbeddings;
+
+    public QueryEmbeddingService(EmbeddingBatchDispatcher embeddingBatchDispatcher,
+            SingleFlightService singleFlightService,
+            @Value("${app.ai.query-embedding.memo-size:256}") int memoSize) {
+        this.embeddingBatchDispatcher = embeddingBatchDispatcher;
+        this.singleFlightService = singleFlightService;
+        // Access-ordered LRU of recent query embeddings
+        this.recentEmbeddings = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > memoSize;
+            }
+        });
+    }
+
+    /**
+     * Embed a query string
+     * 生成查询向量（优先使用最近的缓存结果）
+     */
+    public float[] embed(String query) {
+        String key = SingleFlightService.normalize(query);
+        float[] cached = recentEmbeddings.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Concurrent misses for the same query share one embedding call
+        return singleFlightService.execute(SingleFlightService.EMBEDDING, key, () -> {
+            float[] embedding = embeddingBatchDispatcher.embed(query);
+            recentEmbeddings.put(key, embedding);
+            log.debug("Embedded query ({} dims): {}", embedding.length, query);
+            return embedding;
+        });
+    }
+
+    /**
+     * Cosine similarity between two embeddings
+     */
+    public static double cosineSimilarity(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0.0;
+        }
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0.0 || normB == 0.0) {
+            return 0.0;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
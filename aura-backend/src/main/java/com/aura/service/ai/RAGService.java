@@ -1,14 +1,21 @@
 package com.aura.service.ai;
 
+import com.aura.config.AgentProperties;
+import com.aura.model.event.ManualIndexChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 /**
  * RAG Service
@@ -21,6 +28,11 @@ public class RAGService {
 
     private final SimpleVectorStore vectorStore;
     private final ChatClient chatClient;
+    private final AgentChatService agentChatService;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final SingleFlightService singleFlightService;
+    private final PromptBudgetService promptBudgetService;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Answer question using product manual RAG
@@ -31,12 +43,45 @@ public class RAGService {
         // Search for relevant documents (increased topK for better recall)
         List<Document> relevantDocs = searchSimilar(question, 8);
 
-        if (relevantDocs.isEmpty()) {
+        return answerFromManual(question, sessionId, relevantDocs);
+    }
+
+    /**
+     * Answer question using already retrieved manual documents
+     * 使用已检索的文档回答问题（例如推测式检索的结果）
+     */
+    public String answerFromManual(String question, String sessionId, List<Document> relevantDocs) {
+        if (relevantDocs == null || relevantDocs.isEmpty()) {
             log.warn("No relevant documents found for question: {}", question);
             // Return empty string to let the calling agent handle the response
             return "";
         }
 
+        // Semantic cache lookup, scoped to the manuals the documents came from
+        // 语义缓存查询（以检索到的手册为作用域）
+        Set<String> manualIds = relevantDocs.stream()
+                .map(doc -> String.valueOf(doc.getMetadata().get("product_id")))
+                .collect(Collectors.toSet());
+        SemanticAnswerCache.Key cacheKey = semanticAnswerCache.key(AgentProperties.RAG, question, manualIds);
+        String cached = semanticAnswerCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Concurrent identical questions over the same manuals share one completion
+        String flightKey = SingleFlightService.normalize(question) + "|"
+                + String.join(",", new TreeSet<>(manualIds));
+        return singleFlightService.execute(AgentProperties.RAG, flightKey,
+                () -> generateAnswer(question, relevantDocs, cacheKey));
+    }
+
+    /**
+     * Generate an answer from retrieved documents and cache it
+     * 基于检索文档生成回答并写入语义缓存
+     */
+    private String generateAnswer(String question, List<Document> relevantDocs, SemanticAnswerCache.Key cacheKey) {
+        long startTime = System.currentTimeMillis();
+
         // Build context from retrieved documents
         StringBuilder context = new StringBuilder();
         for (int i = 0; i < relevantDocs.size(); i++) {
@@ -51,9 +96,8 @@ public class RAGService {
                     doc.getText().substring(0, Math.min(100, doc.getText().length())));
         }
 
-        // Create prompt for AI
-        String prompt = String.format(
-                """
+        // Create prompt for AI, truncating the manual excerpts to the token budget
+        String promptTemplate = """
                         Based on the following product manual information, answer the user's question. Use a concise and professional tone.
 
                         Product Manual Information:
@@ -62,16 +106,17 @@ public class RAGService {
                         User Question: %s
 
                         Answer (based on the information above, if insufficient information is available, kindly inform the user):
-                        """,
-                context.toString(), question);
+                        """;
+        String manualContext = promptBudgetService.assemble(AgentProperties.RAG, promptTemplate,
+                Map.of("manual", context.toString()), List.of(), question).context().get("manual");
+        String prompt = String.format(promptTemplate, manualContext, question);
 
         // Generate answer using ChatClient
-        String answer = chatClient.prompt()
-                .user(prompt)
-                .call()
-                .content();
+        String answer = agentChatService.call(AgentProperties.RAG,
+                chatClient.prompt().user(prompt));
 
         log.info("Generated answer ({} chars) from {} documents", answer.length(), relevantDocs.size());
+        semanticAnswerCache.put(cacheKey, answer, System.currentTimeMillis() - startTime);
         return answer;
     }
 
@@ -81,6 +126,13 @@ public class RAGService {
     public List<Document> searchSimilar(String query, int topK) {
         log.debug("Searching for similar documents: query='{}', topK={}", query, topK);
 
+        // Concurrent identical searches share one embedding + vector search
+        return singleFlightService.execute(SingleFlightService.RETRIEVAL,
+                SingleFlightService.normalize(query) + "|" + topK, () -> doSearchSimilar(query, topK));
+    }
+
+    private List<Document> doSearchSimilar(String query, int topK) {
+
         // Create search request using builder pattern
         SearchRequest searchRequest = SearchRequest.builder()
                 .query(query)
@@ -101,6 +153,7 @@ public class RAGService {
     public void addDocument(Document document) {
         log.info("Adding document to vector store: id={}", document.getId());
         vectorStore.add(List.of(document));
+        eventPublisher.publishEvent(new ManualIndexChangedEvent("document added: " + document.getId()));
         log.debug("Document added successfully");
     }
 }
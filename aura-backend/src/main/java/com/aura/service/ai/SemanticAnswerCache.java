@@ -0,0 +1,218 @@
+package com.aura.service.ai;
+
+import com.aura.model.event.ManualIndexChangedEvent;
+import com.aura.model.event.ProductChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Semantic Answer Cache
+ * 语义答案缓存
+ *
+ * 职责：
+ * - 以「查询向量 + 相关产品ID」为键缓存 RAG / 产品咨询的最终答案
+ * - 相似度超过阈值的问题直接返回缓存答案（"how do I pair" ≈ "pairing steps"）
+ * - 支持TTL过期；手册索引或产品数据变更时失效
+ * - 统计命中率和节省的耗时
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SemanticAnswerCache {
+
+    private final QueryEmbeddingService queryEmbeddingService;
+
+    @Value("${app.ai.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.answer-cache.similarity-threshold:0.92}")
+    private double similarityThreshold;
+
+    @Value("${app.ai.answer-cache.ttl:30m}")
+    private Duration ttl;
+
+    @Value("${app.ai.answer-cache.max-entries:1000}")
+    private int maxEntries;
+
+    // scope (namespace + product IDs) -> entries
+    private final Map<String, ConcurrentLinkedDeque<Entry>> entriesByScope = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder savedMillis = new LongAdder();
+
+    /**
+     * Build a cache key for a query (embeds the query)
+     * 构建缓存键（对查询进行向量化）
+     *
+     * @param namespace  Cache namespace (e.g. agent name)
+     * @param query      User query
+     * @param productIds Relevant product IDs (scope)
+     * @return Cache key, or null if caching is disabled or embedding failed
+     */
+    public Key key(String namespace, String query, Collection<String> productIds) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            Set<String> scope = new TreeSet<>(productIds);
+            return new Key(namespace + "|" + String.join(",", scope), scope,
+                    queryEmbeddingService.embed(query));
+        } catch (Exception e) {
+            log.warn("Failed to build semantic cache key: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Look up a semantically similar cached answer
+     * 查找语义相似的缓存答案
+     *
+     * @return Cached answer, or null on miss
+     */
+    public String get(Key key) {
+        if (key == null) {
+            return null;
+        }
+
+        ConcurrentLinkedDeque<Entry> entries = entriesByScope.get(key.scope());
+        if (entries != null) {
+            long now = System.currentTimeMillis();
+            Entry best = null;
+            double bestSimilarity = similarityThreshold;
+
+            for (Iterator<Entry> it = entries.iterator(); it.hasNext();) {
+                Entry entry = it.next();
+                if (now - entry.createdAt() > ttl.toMillis()) {
+                    if (entries.remove(entry)) {
+                        size.decrementAndGet();
+                    }
+                    continue;
+                }
+                double similarity = QueryEmbeddingService.cosineSimilarity(key.embedding(), entry.embedding());
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+
+            if (best != null) {
+                hits.increment();
+                savedMillis.add(best.computeMillis());
+                log.info("Semantic cache hit: scope={}, similarity={}", key.scope(),
+                        String.format("%.3f", bestSimilarity));
+                return best.answer();
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store an answer
+     * 缓存答案
+     *
+     * @param computeMillis Time it took to produce the answer (for saved-latency metrics)
+     */
+    public void put(Key key, String answer, long computeMillis) {
+        if (key == null || answer == null || answer.isBlank()) {
+            return;
+        }
+
+        entriesByScope.computeIfAbsent(key.scope(), k -> new ConcurrentLinkedDeque<>())
+                .addLast(new Entry(key.productIds(), key.embedding(), answer, System.currentTimeMillis(),
+                        computeMillis));
+
+        // Evict oldest entries (from the largest scope) when over capacity
+        if (size.incrementAndGet() > maxEntries) {
+            entriesByScope.values().stream()
+                    .max((a, b) -> Integer.compare(a.size(), b.size()))
+                    .ifPresent(largest -> {
+                        if (largest.pollFirst() != null) {
+                            size.decrementAndGet();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Invalidate all entries (manual index changed)
+     * 手册索引变更时清空缓存
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onManualIndexChanged(ManualIndexChangedEvent event) {
+        entriesByScope.clear();
+        size.set(0);
+        invalidations.increment();
+        log.info("Semantic answer cache cleared: {}", event.reason());
+    }
+
+    /**
+     * Invalidate entries scoped to a changed product
+     * 产品数据变更时失效相关缓存
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        int removed = 0;
+        for (ConcurrentLinkedDeque<Entry> entries : entriesByScope.values()) {
+            for (Entry entry : entries) {
+                if (entry.productIds().contains(event.productId()) && entries.remove(entry)) {
+                    removed++;
+                }
+            }
+        }
+        size.addAndGet(-removed);
+        invalidations.increment();
+        log.debug("Semantic answer cache: removed {} entries for product {}", removed, event.productId());
+    }
+
+    /**
+     * Get cache statistics
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", size.get());
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.sum());
+        stats.put("hit_rate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("saved_ms", savedMillis.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("similarity_threshold", similarityThreshold);
+        stats.put("ttl", ttl.toString());
+        return stats;
+    }
+
+    /**
+     * Cache key: scope string + product IDs + query embedding
+     */
+    public record Key(String scope, Set<String> productIds, float[] embedding) {
+    }
+
+    private record Entry(Set<String> productIds, float[] embedding, String answer, long createdAt,
+            long computeMillis) {
+    }
+}
@@ -0,0 +1,272 @@
+package com.aura.service.ai;
+
+import com.aura.model.entity.ChatHistory;
+import com.aura.repository.ChatHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Semantic Memory Indexer
+ * 语义记忆索引器
+ *
+ * 职责：
+ * - 将已持久化的对话消息写入语义记忆（向量库），由写入队列后台线程调用，不在请求路径上
+ * - 跳过过短或无意义的消息（"ok"、"thanks" 等）
+ * - 批量向量化（一次 EmbeddingModel 调用）
+ * - 每个会话最多索引 max-per-session 条消息
+ *
+ * 模式（app.ai.semantic-memory.mode）：
+ * - eager：消息持久化后立即索引
+ * - lazy（默认）：会话首次进行语义检索时才从数据库加载并索引，之后新消息增量索引；
+ *   加载期间持久化的消息暂存，加载完成后只索引加载结果中没有的（按ID去重），
+ *   同一会话的其他检索等待加载完成（最多 load-timeout），不会看到不完整的索引
+ * - off：不索引
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SemanticMemoryIndexer {
+
+    private static final Pattern TRIVIAL_MESSAGE = Pattern.compile(
+            "^(hi|hello|hey|ok|okay|sure|yes|no|thanks?|thank you|thx|bye|goodbye|好的|谢谢|你好|嗯)[!.?。！？ ]*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private final SimpleVectorStore semanticMemory;
+    private final EmbeddingBatchDispatcher embeddingBatchDispatcher;
+    private final ChatHistoryRepository chatHistoryRepository;
+
+    @Value("${app.ai.semantic-memory.mode:lazy}")
+    private String mode;
+
+    @Value("${app.ai.semantic-memory.min-chars:20}")
+    private int minChars;
+
+    @Value("${app.ai.semantic-memory.max-per-session:200}")
+    private int maxPerSession;
+
+    @Value("${app.ai.semantic-memory.batch-size:32}")
+    private int batchSize;
+
+    @Value("${app.ai.semantic-memory.load-timeout:30s}")
+    private Duration loadTimeout;
+
+    // Sessions being loaded or indexed -> loading state and number of indexed messages
+    private final Map<String, SessionIndex> indexedSessions = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder skippedTrivial = new LongAdder();
+    private final LongAdder skippedCap = new LongAdder();
+    private final LongAdder lazyLoads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Index newly persisted messages (called after they are written to MySQL)
+     * 索引新持久化的消息
+     *
+     * In lazy mode only sessions that have already been loaded are indexed incrementally.
+     */
+    public void onPersisted(List<ChatHistory> messages) {
+        if ("off".equals(mode)) {
+            return;
+        }
+
+        if ("eager".equals(mode)) {
+            index(messages);
+            return;
+        }
+
+        List<ChatHistory> toIndex = new ArrayList<>();
+        for (ChatHistory chat : messages) {
+            SessionIndex session = indexedSessions.get(chat.getSessionId());
+            if (session == null) {
+                continue;
+            }
+            synchronized (session) {
+                if (!session.loaded.isDone()) {
+                    // The lazy load may or may not see this row: decide once it has finished
+                    session.deferred.add(chat);
+                    continue;
+                }
+            }
+            if (!session.loadedIds.contains(chat.getId())) {
+                toIndex.add(chat);
+            }
+        }
+        index(toIndex);
+    }
+
+    /**
+     * Whether a semantic lookup on this session needs indexing first
+     * 会话在语义检索前是否需要先加载索引（仅 lazy 模式）
+     */
+    public boolean needsIndexing(String sessionId) {
+        if (!"lazy".equals(mode) || sessionId == null) {
+            return false;
+        }
+        SessionIndex session = indexedSessions.get(sessionId);
+        return session == null || !session.loaded.isDone();
+    }
+
+    /**
+     * Load and index a session's persisted messages on first semantic lookup
+     * 首次语义检索时从数据库加载并索引会话消息
+     */
+    public void ensureIndexed(String sessionId) {
+        if (!needsIndexing(sessionId)) {
+            return;
+        }
+
+        // Only the first caller for a session loads it; the others wait for the load to finish
+        SessionIndex session = new SessionIndex(new CompletableFuture<>());
+        SessionIndex existing = indexedSessions.putIfAbsent(sessionId, session);
+        if (existing != null) {
+            awaitLoaded(sessionId, existing);
+            return;
+        }
+
+        lazyLoads.increment();
+        try {
+            List<ChatHistory> history = chatHistoryRepository.findBySessionIdOrderByCreatedAtAsc(sessionId);
+            log.info("Lazily indexing semantic memory for session {}: {} messages", sessionId, history.size());
+            history.forEach(chat -> session.loadedIds.add(chat.getId()));
+            index(history);
+        } catch (RuntimeException e) {
+            // Let the next lookup retry the load (it will cover the deferred messages too)
+            indexedSessions.remove(sessionId, session);
+            synchronized (session) {
+                session.deferred.clear();
+            }
+            failures.increment();
+            log.error("Failed to load semantic memory for session {}: {}", sessionId, e.getMessage(), e);
+        } finally {
+            finishLoading(session);
+        }
+    }
+
+    /**
+     * Index messages persisted during the load (skipping those it covered), then mark the session loaded
+     */
+    private void finishLoading(SessionIndex session) {
+        while (true) {
+            List<ChatHistory> deferred;
+            synchronized (session) {
+                if (session.deferred.isEmpty()) {
+                    session.loaded.complete(null);
+                    return;
+                }
+                deferred = new ArrayList<>(session.deferred);
+                session.deferred.clear();
+            }
+            index(deferred.stream().filter(chat -> !session.loadedIds.contains(chat.getId())).toList());
+        }
+    }
+
+    private void awaitLoaded(String sessionId, SessionIndex session) {
+        try {
+            session.loaded.get(loadTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Semantic memory for session {} still loading after {}, searching the partial index",
+                    sessionId, loadTimeout);
+        }
+    }
+
+    /**
+     * Forget indexing state for a cleared session
+     * 清除会话的索引状态
+     */
+    public void forgetSession(String sessionId) {
+        indexedSessions.remove(sessionId);
+    }
+
+    private void index(List<ChatHistory> messages) {
+        List<Document> documents = new ArrayList<>();
+        for (ChatHistory chat : messages) {
+            String text = chat.getMessage() != null ? chat.getMessage().trim() : "";
+            if (text.length() < minChars || TRIVIAL_MESSAGE.matcher(text).matches()) {
+                skippedTrivial.increment();
+                continue;
+            }
+
+            AtomicInteger sessionCount = indexedSessions.computeIfAbsent(chat.getSessionId(),
+                    k -> new SessionIndex(CompletableFuture.completedFuture(null))).count;
+            if (sessionCount.incrementAndGet() > maxPerSession) {
+                sessionCount.decrementAndGet();
+                skippedCap.increment();
+                continue;
+            }
+
+            documents.add(new Document(text, Map.of(
+                    "sessionId", chat.getSessionId(),
+                    "role", chat.getRole(),
+                    "timestamp", chat.getCreatedAt().toString())));
+        }
+
+        for (int from = 0; from < documents.size(); from += batchSize) {
+            List<Document> batch = documents.subList(from, Math.min(from + batchSize, documents.size()));
+            try {
+                embeddingBatchDispatcher.addDocuments(semanticMemory, batch);
+                indexed.add(batch.size());
+            } catch (Exception e) {
+                log.error("Failed to save to semantic memory: {}", e.getMessage(), e);
+                failures.increment();
+            }
+        }
+    }
+
+    /**
+     * Per-session indexing state
+     */
+    private static final class SessionIndex {
+        // Completed once the session's persisted messages are indexed (immediately in eager mode)
+        private final CompletableFuture<Void> loaded;
+        // IDs of the messages the lazy load indexed (written before loaded completes)
+        private final Set<Long> loadedIds = new HashSet<>();
+        // Messages persisted while the lazy load was running (guarded by this instance)
+        private final List<ChatHistory> deferred = new ArrayList<>();
+        // Number of indexed messages
+        private final AtomicInteger count = new AtomicInteger();
+
+        SessionIndex(CompletableFuture<Void> loaded) {
+            this.loaded = loaded;
+        }
+    }
+
+    /**
+     * Get indexing statistics
+     * 获取语义记忆索引统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("indexed_sessions", indexedSessions.size());
+        stats.put("indexed", indexed.sum());
+        stats.put("skipped_trivial", skippedTrivial.sum());
+        stats.put("skipped_session_cap", skippedCap.sum());
+        stats.put("lazy_loads", lazyLoads.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,60 @@
+package com.aura.service.ai;
+
+import com.aura.model.entity.ChatHistory;
+
+import java.util.List;
+
+/**
+ * Session History Buffer
+ * 会话消息环形缓冲区
+ *
+ * 固定容量，只追加写入，O(1) 分配；读取返回最近 N 条消息的不可变快照。
+ * 追加已由 SessionHistoryCache 按会话串行化，这里只用缓冲区自身的监视器保护读写，
+ * 锁的范围仅限单个会话。
+ */
+final class SessionHistoryBuffer {
+
+    private final ChatHistory[] slots;
+
+    // Total messages appended; the next write goes to slot(appended)
+    private long appended;
+
+    SessionHistoryBuffer(int capacity) {
+        this.slots = new ChatHistory[capacity];
+    }
+
+    /**
+     * Append a message, overwriting the oldest one when full
+     *
+     * @return The overwritten message, or null if the buffer was not full
+     */
+    synchronized ChatHistory append(ChatHistory message) {
+        int slot = slot(appended++);
+        ChatHistory overwritten = slots[slot];
+        slots[slot] = message;
+        return overwritten;
+    }
+
+    /**
+     * Immutable snapshot of the last {@code limit} messages (chronological)
+     */
+    synchronized List<ChatHistory> snapshot(int limit) {
+        long start = Math.max(0, appended - Math.min(limit, slots.length));
+        ChatHistory[] window = new ChatHistory[(int) (appended - start)];
+        for (long sequence = start; sequence < appended; sequence++) {
+            window[(int) (sequence - start)] = slots[slot(sequence)];
+        }
+        return List.of(window);
+    }
+
+    /**
+     * Number of messages currently held
+     */
+    synchronized int size() {
+        return (int) Math.min(appended, slots.length);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % slots.length);
+    }
+}
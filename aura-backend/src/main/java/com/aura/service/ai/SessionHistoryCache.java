@@ -0,0 +1,230 @@
+package com.aura.service.ai;
+
+import com.aura.model.entity.ChatHistory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session History Cache
+ * 会话短期记忆缓存
+ *
+ * 职责：
+ * - 缓存每个会话最近 max-messages 条消息（短期记忆），每个会话一个 SessionHistoryBuffer 环形缓冲区：
+ *   追加 O(1)，读取返回不可变快照
+ * - Caffeine 有界缓存：按权重（估算字节数）淘汰，总权重不超过 max-weight-bytes，空闲超过 idle-ttl 过期，
+ *   堆占用不随会话数增长；读写只锁定所在的哈希分段，没有全局锁
+ * - 未命中时由 MemoryService 从数据库重新加载（install）
+ * - 统计命中率和淘汰次数
+ *
+ * 条目分两种：
+ * - complete：从数据库加载，包含会话最近的全部消息
+ * - incomplete：淘汰后新消息追加产生，只有部分消息，需要更多历史时视为未命中
+ *
+ * 条目不可变（缓冲区除外）：追加和重新加载通过 compute 替换条目，Caffeine 随之重新计算权重。
+ */
+@Component
+@Slf4j
+public class SessionHistoryCache {
+
+    private static final long CONTEXT_ALLOWANCE_BYTES = 512;
+
+    private final long maxWeightBytes;
+    private final Duration idleTtl;
+    private final int maxMessages;
+
+    private final Cache<String, Entry> entries;
+
+    // Metrics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder expiredEvictions = new LongAdder();
+
+    public SessionHistoryCache(
+            @Value("${app.ai.session-cache.max-weight-bytes:67108864}") long maxWeightBytes,
+            @Value("${app.ai.session-cache.idle-ttl:30m}") Duration idleTtl,
+            @Value("${app.ai.session-cache.max-messages:50}") int maxMessages) {
+        this.maxWeightBytes = maxWeightBytes;
+        this.idleTtl = idleTtl;
+        this.maxMessages = maxMessages;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxWeightBytes)
+                .weigher((String sessionId, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.weight()))
+                .expireAfterAccess(idleTtl)
+                .removalListener((String sessionId, Entry entry, RemovalCause cause) -> {
+                    if (cause == RemovalCause.SIZE) {
+                        sizeEvictions.increment();
+                    } else if (cause == RemovalCause.EXPIRED) {
+                        expiredEvictions.increment();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Get the last {@code limit} messages of a session
+     * 获取会话最近的消息
+     *
+     * @return Messages in chronological order, or null on miss (caller reloads from DB)
+     */
+    public List<ChatHistory> get(String sessionId, int limit) {
+        Entry entry = entries.getIfPresent(sessionId);
+        if (entry == null || (!entry.complete() && entry.buffer().size() < limit)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.buffer().snapshot(limit);
+    }
+
+    /**
+     * Maximum messages kept per session
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * Number of messages appended to the session's entry so far
+     * (passed back to {@link #install} to keep appends that race with a reload)
+     */
+    public long appendCount(String sessionId) {
+        Entry entry = entries.getIfPresent(sessionId);
+        return entry != null ? entry.appended() : 0;
+    }
+
+    /**
+     * Append a new message to a session
+     * 追加新消息（会话不在缓存中时创建 incomplete 条目）
+     *
+     * O(1): writes one ring buffer slot, no list copy. Appends to the same session are
+     * serialized by compute; other sessions are not blocked.
+     */
+    public void append(String sessionId, ChatHistory message) {
+        entries.asMap().compute(sessionId, (key, entry) -> {
+            Entry current = entry != null ? entry : new Entry(new SessionHistoryBuffer(maxMessages), false, 0, 0);
+            long delta = appendToBuffer(current.buffer(), message);
+            return new Entry(current.buffer(), current.complete(), current.weight() + delta, current.appended() + 1);
+        });
+    }
+
+    /**
+     * Install history reloaded from the database
+     * 写入从数据库重新加载的会话历史
+     *
+     * @param loaded            Messages loaded from MySQL and the write-behind queue (chronological)
+     * @param appendCountBefore {@link #appendCount} read before loading
+     * @return Immutable snapshot of the installed messages (chronological)
+     */
+    public List<ChatHistory> install(String sessionId, List<ChatHistory> loaded, long appendCountBefore) {
+        Entry installed = entries.asMap().compute(sessionId, (key, existing) -> {
+            SessionHistoryBuffer buffer = new SessionHistoryBuffer(maxMessages);
+            long weight = 0;
+            for (ChatHistory message : tail(loaded, maxMessages)) {
+                weight += appendToBuffer(buffer, message);
+            }
+
+            // Keep messages appended while the reload was running
+            if (existing != null && existing.appended() > appendCountBefore) {
+                Set<ChatHistory> known = Collections.newSetFromMap(new IdentityHashMap<>());
+                known.addAll(loaded);
+                int newer = (int) Math.min(existing.appended() - appendCountBefore, maxMessages);
+                for (ChatHistory message : existing.buffer().snapshot(newer)) {
+                    if (!known.contains(message)) {
+                        weight += appendToBuffer(buffer, message);
+                    }
+                }
+            }
+            return new Entry(buffer, true, weight, existing != null ? existing.appended() : 0);
+        });
+        reloads.increment();
+        return installed.buffer().snapshot(maxMessages);
+    }
+
+    /**
+     * Remove a session
+     * 移除会话缓存
+     */
+    public void invalidate(String sessionId) {
+        entries.invalidate(sessionId);
+    }
+
+    /**
+     * Append to a buffer
+     *
+     * @return Weight change in bytes
+     */
+    private static long appendToBuffer(SessionHistoryBuffer buffer, ChatHistory message) {
+        ChatHistory overwritten = buffer.append(message);
+        return estimateBytes(message) - (overwritten != null ? estimateBytes(overwritten) : 0);
+    }
+
+    private static List<ChatHistory> tail(List<ChatHistory> messages, int limit) {
+        return messages.subList(Math.max(0, messages.size() - limit), messages.size());
+    }
+
+    /**
+     * Approximate retained heap size of a message in bytes
+     * (object headers + fields + UTF-16 strings + a flat allowance for the context map/JSON)
+     */
+    static long estimateBytes(ChatHistory message) {
+        long bytes = 96 + CONTEXT_ALLOWANCE_BYTES;
+        bytes += stringBytes(message.getSessionId());
+        bytes += stringBytes(message.getRole());
+        bytes += stringBytes(message.getMessage());
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    /**
+     * Get cache statistics
+     * 获取会话缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", entries.estimatedSize());
+        stats.put("weight_bytes", entries.policy().eviction()
+                .flatMap(eviction -> eviction.weightedSize().stream().boxed().findFirst())
+                .orElse(0L));
+        stats.put("max_weight_bytes", maxWeightBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.sum());
+        stats.put("hit_rate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("reloads", reloads.sum());
+        stats.put("size_evictions", sizeEvictions.sum());
+        stats.put("expired_evictions", expiredEvictions.sum());
+        stats.put("idle_ttl", idleTtl.toString());
+        return stats;
+    }
+
+    /**
+     * Cache entry (replaced on every append, so Caffeine re-weighs it)
+     *
+     * @param buffer   Ring buffer shared by successive entries of the session
+     * @param complete Loaded from the database (holds all recent messages)
+     * @param weight   Estimated bytes of the buffered messages
+     * @param appended Messages appended since the session entered the cache
+     */
+    private record Entry(SessionHistoryBuffer buffer, boolean complete, long weight, long appended) {
+    }
+}
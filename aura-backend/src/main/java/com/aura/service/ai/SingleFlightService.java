@@ -0,0 +1,140 @@
+package com.aura.service.ai;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-Flight Service
+ * 请求合并服务
+ *
+ * 职责：
+ * - 相同键（规范化查询 + 意图 + 产品范围）的并发请求共享同一个正在进行的计算
+ * - 第一个请求执行计算，其余请求等待并获得同一结果（或同一异常）
+ * - 用于查询向量化、手册检索和可缓存的LLM回答，促销等突发流量下重复的上游调用合并为一次
+ *
+ * 注意：只合并「正在进行」的请求，计算完成后立即移除；结果缓存由 SemanticAnswerCache 负责。
+ * 跟随请求最多等待 app.ai.single-flight.wait-timeout，超时后自行计算。
+ */
+@Service
+@Slf4j
+public class SingleFlightService {
+
+    public static final String EMBEDDING = "embedding";
+    public static final String RETRIEVAL = "retrieval";
+
+    @Value("${app.ai.single-flight.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.single-flight.wait-timeout:90s}")
+    private Duration waitTimeout;
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // Metrics per namespace: [executed, coalesced, wait timeouts]
+    private final Map<String, LongAdder[]> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Execute work, sharing the result with concurrent callers using the same key
+     * 执行计算；相同键的并发调用共享同一结果
+     *
+     * @param namespace Kind of work (e.g. embedding, retrieval, agent name)
+     * @param key       Identity of the work within the namespace (already normalized)
+     * @param work      The computation (runs on the calling thread of the first caller)
+     * @return Result of the shared computation
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String namespace, String key, Supplier<T> work) {
+        if (!enabled || key == null) {
+            return work.get();
+        }
+
+        LongAdder[] stats = counters.computeIfAbsent(namespace, k -> new LongAdder[] { new LongAdder(), new LongAdder(), new LongAdder() });
+        String flightKey = namespace + "|" + key;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+
+        if (existing != null) {
+            // Another caller is already computing this: wait for its result
+            stats[1].increment();
+            log.debug("Coalesced in-flight {} request: {}", namespace, key);
+            try {
+                // Bounded wait on a copy: the timeout must not complete the shared future for other followers
+                return (T) existing.copy().orTimeout(waitTimeout.toMillis(), TimeUnit.MILLISECONDS).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    stats[2].increment();
+                    log.warn("Timed out after {} waiting for in-flight {} request, computing it directly: {}",
+                            waitTimeout, namespace, key);
+                    return work.get();
+                }
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        stats[0].increment();
+        Throwable failure = null;
+        T result = null;
+        try {
+            result = work.get();
+            return result;
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            // Always complete the flight (errors included) so followers never wait on an abandoned future
+            inFlight.remove(flightKey, flight);
+            if (failure != null) {
+                flight.completeExceptionally(failure);
+            } else {
+                flight.complete(result);
+            }
+        }
+    }
+
+    /**
+     * Normalize a query for use in a coalescing / cache key
+     * 规范化查询（去除首尾空白、合并空白、转小写）
+     */
+    public static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * Get coalescing statistics
+     * 获取请求合并统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> namespaces = new LinkedHashMap<>();
+        counters.forEach((namespace, stats) -> {
+            long executed = stats[0].sum();
+            long coalesced = stats[1].sum();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("executed", executed);
+            entry.put("coalesced", coalesced);
+            entry.put("wait_timeouts", stats[2].sum());
+            entry.put("coalesced_rate", executed + coalesced == 0 ? 0.0 : (double) coalesced / (executed + coalesced));
+            namespaces.put(namespace, entry);
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("in_flight", inFlight.size());
+        result.put("namespaces", namespaces);
+        return result;
+    }
+}
@@ -0,0 +1,215 @@
+package com.aura.service.ai;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Speculative Retrieval Service
+ * 推测式检索服务
+ *
+ * 职责：
+ * - 在意图分析（LLM调用）进行的同时，提前执行查询向量化和手册检索
+ * - 意图为 PRODUCT_INQUIRY 时，将检索结果交给 ProductExpertAgent 复用
+ * - 其他意图时取消或丢弃检索结果；意图正确但回答命中语义缓存或共享其他请求的结果时放弃
+ * - 统计命中率与浪费的检索耗时，便于调优
+ *
+ * 默认关闭，通过 app.ai.speculative-retrieval.enabled 开启
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SpeculativeRetrievalService {
+
+    private final RAGService ragService;
+    @Qualifier("aiTaskExecutor")
+    private final ThreadPoolTaskExecutor aiTaskExecutor;
+
+    @Value("${app.ai.speculative-retrieval.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.ai.speculative-retrieval.top-k:8}")
+    private int topK;
+
+    // Metrics
+    private final LongAdder started = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder intentMisses = new LongAdder();
+    private final LongAdder queryMismatches = new LongAdder();
+    private final LongAdder unused = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder wastedMillis = new LongAdder();
+    private final LongAdder savedMillis = new LongAdder();
+
+    /**
+     * Start speculative retrieval in the background
+     * 在后台启动推测式检索
+     *
+     * @param querySupplier Resolves the retrieval query (runs on the executor thread)
+     * @return Handle to the in-flight speculation, or null when disabled
+     */
+    public Speculation start(Supplier<String> querySupplier) {
+        if (!enabled) {
+            return null;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            // submit() returns a FutureTask: cancel(true) interrupts it (or keeps a queued task from starting)
+            Future<Result> future = aiTaskExecutor.submit(() -> {
+                String query = querySupplier.get();
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Speculative retrieval discarded");
+                }
+                List<Document> documents = ragService.searchSimilar(query, topK);
+                return new Result(query, documents, System.nanoTime() - startNanos);
+            });
+
+            started.increment();
+            return new Speculation(future, startNanos);
+        } catch (Exception e) {
+            // Executor saturated: simply skip speculation for this request
+            log.warn("Failed to start speculative retrieval: {}", e.getMessage());
+            failures.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Claim speculative results for the actual retrieval query
+     * 认领推测检索结果（查询一致时复用）
+     *
+     * @param speculation Speculation handle (may be null)
+     * @param query       The query the agent would actually retrieve with
+     * @return Retrieved documents, or null if the caller should retrieve itself
+     */
+    public List<Document> claim(Speculation speculation, String query) {
+        if (speculation == null) {
+            return null;
+        }
+
+        long claimNanos = System.nanoTime();
+        try {
+            Result result = speculation.future().get();
+
+            if (!result.query().equals(query)) {
+                log.info("Speculative retrieval discarded: query mismatch ('{}' vs '{}')", result.query(), query);
+                queryMismatches.increment();
+                wastedMillis.add(toMillis(result.elapsedNanos()));
+                return null;
+            }
+
+            // Time saved = portion of the retrieval that overlapped with intent analysis
+            long overlapNanos = Math.min(result.elapsedNanos(), claimNanos - speculation.startNanos());
+            hits.increment();
+            savedMillis.add(toMillis(overlapNanos));
+            log.info("Speculative retrieval hit: {} documents, saved ~{} ms",
+                    result.documents().size(), toMillis(overlapNanos));
+            return result.documents();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.increment();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            log.warn("Speculative retrieval failed, falling back to direct retrieval: {}", e.getMessage());
+            failures.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Discard a speculation that will not be used (intent was not PRODUCT_INQUIRY)
+     * 丢弃不会被使用的推测检索
+     */
+    public void discard(Speculation speculation) {
+        if (speculation == null) {
+            return;
+        }
+
+        intentMisses.increment();
+        cancel(speculation);
+    }
+
+    /**
+     * Abandon a speculation for a product inquiry answered without retrieval
+     * (semantic cache hit, or an identical in-flight request's answer was shared)
+     * 放弃推测检索（意图正确，但回答无需检索），不计入意图未命中
+     */
+    public void abandon(Speculation speculation) {
+        if (speculation == null) {
+            return;
+        }
+
+        unused.increment();
+        cancel(speculation);
+    }
+
+    private void cancel(Speculation speculation) {
+        Future<Result> future = speculation.future();
+        if (!future.isDone()) {
+            // Still queued or running: cancel (interrupts the worker) and count the time consumed so far
+            future.cancel(true);
+            wastedMillis.add(toMillis(System.nanoTime() - speculation.startNanos()));
+            return;
+        }
+        try {
+            wastedMillis.add(toMillis(future.get().elapsedNanos()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            wastedMillis.add(toMillis(System.nanoTime() - speculation.startNanos()));
+        }
+    }
+
+    /**
+     * Get speculation statistics
+     * 获取推测检索统计信息
+     */
+    public Map<String, Object> getStats() {
+        long total = started.sum();
+        long hitCount = hits.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("started", total);
+        stats.put("hits", hitCount);
+        stats.put("intent_misses", intentMisses.sum());
+        stats.put("query_mismatches", queryMismatches.sum());
+        stats.put("unused", unused.sum());
+        stats.put("failures", failures.sum());
+        stats.put("hit_rate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("saved_ms", savedMillis.sum());
+        stats.put("wasted_ms", wastedMillis.sum());
+        return stats;
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * Handle to an in-flight speculative retrieval
+     */
+    public record Speculation(Future<Result> future, long startNanos) {
+    }
+
+    /**
+     * Result of a speculative retrieval
+     */
+    public record Result(String query, List<Document> documents, long elapsedNanos) {
+    }
+}
@@ -0,0 +1,102 @@
+package com.aura.service.ai;
+
+import com.aura.config.OpenAIConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.model.function.FunctionCallbackResolver;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tool Token Report Service
+ * 工具Schema Token统计服务
+ *
+ * 统计每种调用类型（intent、general-chat、rag、customer-service、product-expert）
+ * 在按Agent注册工具后，相比全局注册全部工具每次调用节省的Prompt Token数
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ToolTokenReportService {
+
+    private final FunctionCallbackResolver functionCallbackResolver;
+    private final ObjectMapper objectMapper;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    // Computed lazily: function beans are resolved on first request
+    private volatile Map<String, Object> cachedReport;
+
+    /**
+     * Get prompt token report per call type
+     * 获取每种调用类型的工具Token统计
+     */
+    public Map<String, Object> getReport() {
+        Map<String, Object> report = cachedReport;
+        if (report == null) {
+            report = buildReport();
+            cachedReport = report;
+        }
+        return report;
+    }
+
+    private Map<String, Object> buildReport() {
+        // All tools that used to be registered globally on every call
+        Set<String> allTools = new LinkedHashSet<>();
+        OpenAIConfig.TOOLS_BY_CALL_TYPE.values().forEach(allTools::addAll);
+
+        Map<String, Integer> toolTokens = new LinkedHashMap<>();
+        for (String tool : allTools) {
+            toolTokens.put(tool, estimateToolTokens(tool));
+        }
+        int allToolTokens = toolTokens.values().stream().mapToInt(Integer::intValue).sum();
+
+        Map<String, Object> callTypes = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : OpenAIConfig.TOOLS_BY_CALL_TYPE.entrySet()) {
+            int registeredTokens = entry.getValue().stream().mapToInt(toolTokens::get).sum();
+
+            Map<String, Object> callType = new LinkedHashMap<>();
+            callType.put("tools", entry.getValue());
+            callType.put("tool_tokens", registeredTokens);
+            callType.put("tokens_saved_per_call", allToolTokens - registeredTokens);
+            callTypes.put(entry.getKey(), callType);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("tool_tokens", toolTokens);
+        report.put("all_tools_tokens", allToolTokens);
+        report.put("call_types", callTypes);
+
+        log.info("Tool schema token report: all tools={} tokens, per call type={}", allToolTokens, callTypes);
+        return report;
+    }
+
+    /**
+     * Estimate tokens of a tool definition as sent to the model
+     * (name + description + JSON parameter schema)
+     */
+    private int estimateToolTokens(String toolName) {
+        try {
+            FunctionCallback callback = functionCallbackResolver.resolve(toolName);
+            Map<String, Object> definition = new LinkedHashMap<>();
+            definition.put("type", "function");
+            definition.put("function", Map.of(
+                    "name", callback.getName(),
+                    "description", callback.getDescription(),
+                    "parameters", callback.getInputTypeSchema()));
+            return tokenCountEstimator.estimate(objectMapper.writeValueAsString(definition));
+        } catch (Exception e) {
+            log.warn("Failed to estimate tokens for tool {}: {}", toolName, e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -12,7 +12,9 @@ USE aura_db;
 -- 删除已存在的表（开发环境）
 DROP TABLE IF EXISTS order_items;
 DROP TABLE IF EXISTS orders;
+DROP TABLE IF EXISTS conversation_summary;
 DROP TABLE IF EXISTS chat_history;
+DROP TABLE IF EXISTS inventory_journal;
 DROP TABLE IF EXISTS products;
 
 -- ============================================
@@ -31,7 +33,10 @@ CREATE TABLE products (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     INDEX idx_category (category),
-    INDEX idx_name (name)
+    INDEX idx_name (name),
+    INDEX idx_price (price),
+    INDEX idx_category_price (category, price),
+    INDEX idx_created_at (created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='产品表';
 
 -- ============================================
@@ -79,9 +84,32 @@ CREATE TABLE chat_history (
     context_data JSON COMMENT '上下文数据（JSON格式）',
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     INDEX idx_session_id (session_id),
-    INDEX idx_created_at (created_at)
+    INDEX idx_created_at (created_at),
+    INDEX idx_session_created (session_id, created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='聊天历史表';
 
+-- ============================================
+-- 5. 会话摘要表 (conversation_summary)
+-- ============================================
+CREATE TABLE conversation_summary (
+    session_id VARCHAR(100) PRIMARY KEY COMMENT '会话ID',
+    summary TEXT NOT NULL COMMENT '较早对话的滚动摘要',
+    covered_until TIMESTAMP NOT NULL COMMENT '摘要覆盖到的最后一条消息的创建时间',
+    covered_messages INT NOT NULL DEFAULT 0 COMMENT '摘要覆盖的消息数',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='会话摘要表';
+
+-- ============================================
+-- 6. 库存变化日志表 (inventory_journal)
+-- ============================================
+CREATE TABLE inventory_journal (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '日志ID',
+    product_id VARCHAR(50) NOT NULL COMMENT '产品ID',
+    delta INT NOT NULL COMMENT '库存变化（负数为下单扣减，正数为取消恢复）',
+    created_at DATETIME COMMENT '创建时间',
+    INDEX idx_product_id (product_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='库存变化日志表（回写 products.stock 后删除）';
+
 -- ============================================
 -- 插入初始数据 - 6 个产品 (图片路径已本地化)
 -- ============================================
@@ -0,0 +1,243 @@
+package com.aura.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.aura.model.entity.InventoryJournalEntry;
+import com.aura.model.entity.Product;
+import com.aura.repository.InventoryJournalRepository;
+import com.aura.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.aura.service.ConcurrentTestSupport.runConcurrently;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 库存预留引擎并发测试：分段计数器在争用下不超卖；并发预留、确认、释放、过期时库存不为负，
+ * 已确认的扣减与日志一致
+ */
+class InventoryReservationServiceTest {
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 2000;
+    private static final int INITIAL_STOCK = 1000;
+
+    // Every reservation expires at once: the sweeper's per-reservation WARN lines would flood the build output
+    private final Logger serviceLogger = (Logger) LoggerFactory.getLogger(InventoryReservationService.class);
+    private Level serviceLogLevel;
+
+    private InventoryJournalRepository journalRepository;
+    private InventoryReservationService service;
+
+    // Product ID → sum of the journal deltas written
+    private final Map<String, AtomicInteger> journal = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        serviceLogLevel = serviceLogger.getLevel();
+        serviceLogger.setLevel(Level.ERROR);
+
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findById(anyString())).thenAnswer(invocation -> {
+            Product product = new Product();
+            product.setId(invocation.getArgument(0));
+            product.setName(invocation.getArgument(0));
+            product.setStock(INITIAL_STOCK);
+            return Optional.of(product);
+        });
+        ProductCatalog productCatalog = mock(ProductCatalog.class);
+        when(productCatalog.snapshot()).thenReturn(ProductCatalog.Snapshot.of(1, List.of()));
+
+        journalRepository = mock(InventoryJournalRepository.class);
+        when(journalRepository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<InventoryJournalEntry> entries = invocation.getArgument(0);
+            Runnable write = () -> entries.forEach(entry -> journal
+                    .computeIfAbsent(entry.getProductId(), key -> new AtomicInteger()).addAndGet(entry.getDelta()));
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                write.run();
+                return entries;
+            }
+            // Rows written in a transaction are discarded when it rolls back
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        write.run();
+                    }
+                }
+            });
+            return entries;
+        });
+
+        // Reservations expire as soon as they are made; the test drives the sweeper itself
+        service = new InventoryReservationService(productRepository, mock(ProductService.class), productCatalog,
+                journalRepository, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                true, 8, Duration.ZERO, Duration.ofHours(1), Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        serviceLogger.setLevel(serviceLogLevel);
+    }
+
+    @Test
+    void stripedCounterHandsOutExactlyItsStock() throws Exception {
+        InventoryReservationService.StripedCounter counter = new InventoryReservationService.StripedCounter(8,
+                INITIAL_STOCK);
+        LongAdder acquired = new LongAdder();
+
+        // Every thread takes one unit until the counter is empty: the last units come from gathering stripes
+        runConcurrently(THREADS, () -> {
+            while (counter.tryAcquire(1)) {
+                acquired.increment();
+            }
+        });
+
+        assertThat(acquired.sum()).isEqualTo(INITIAL_STOCK);
+        assertThat(counter.sum()).isZero();
+    }
+
+    @Test
+    void stripedCounterConservesStockUnderContention() throws Exception {
+        InventoryReservationService.StripedCounter counter = new InventoryReservationService.StripedCounter(8,
+                INITIAL_STOCK);
+        LongAdder acquired = new LongAdder();
+        LongAdder added = new LongAdder();
+        AtomicBoolean negative = new AtomicBoolean();
+
+        runConcurrently(THREADS, () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < ROUNDS; i++) {
+                int quantity = 1 + random.nextInt(5);
+                if (counter.tryAcquire(quantity)) {
+                    acquired.add(quantity);
+                    if (random.nextBoolean()) {
+                        counter.add(quantity);
+                        added.add(quantity);
+                    }
+                }
+                if (counter.sum() < 0) {
+                    negative.set(true);
+                }
+            }
+        });
+
+        assertThat(negative).isFalse();
+        assertThat(counter.sum()).isEqualTo(INITIAL_STOCK - acquired.sum() + added.sum());
+        assertThat(acquired.sum() - added.sum()).isLessThanOrEqualTo(INITIAL_STOCK);
+    }
+
+    @Test
+    void concurrentReserveConfirmExpireNeverDrivesStockBelowZero() throws Exception {
+        Map<String, LongAdder> deducted = Map.of("p1", new LongAdder(), "p2", new LongAdder());
+        AtomicBoolean negative = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread sweeper = new Thread(() -> {
+            while (running.get()) {
+                service.expireReservations();
+                if (service.available("p1") < 0 || service.available("p2") < 0) {
+                    negative.set(true);
+                }
+            }
+        });
+        sweeper.start();
+        try {
+            runConcurrently(THREADS, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < ROUNDS; i++) {
+                    Map<String, Integer> quantities = random.nextBoolean()
+                            ? Map.of("p1", 1 + random.nextInt(3))
+                            : Map.of("p1", 1 + random.nextInt(3), "p2", 1 + random.nextInt(3));
+                    InventoryReservationService.Reservation reservation;
+                    try {
+                        reservation = service.reserve(quantities);
+                    } catch (IllegalArgumentException e) {
+                        continue;
+                    }
+                    boolean confirmed = switch (random.nextInt(5)) {
+                        case 0 -> completeInTransaction(reservation, true);
+                        case 1 -> completeInTransaction(reservation, false);
+                        case 2 -> confirm(reservation);
+                        case 3 -> {
+                            service.release(reservation);
+                            yield false;
+                        }
+                        // Abandoned: left for the sweeper
+                        default -> false;
+                    };
+                    if (confirmed) {
+                        quantities.forEach((productId, quantity) -> deducted.get(productId).add(quantity));
+                    }
+                }
+            });
+        } finally {
+            running.set(false);
+            sweeper.join();
+        }
+        service.expireReservations();
+
+        assertThat(negative).isFalse();
+        for (String productId : List.of("p1", "p2")) {
+            int confirmed = (int) deducted.get(productId).sum();
+            assertThat(service.available(productId)).isEqualTo(INITIAL_STOCK - confirmed);
+            assertThat(journal.getOrDefault(productId, new AtomicInteger()).get()).isEqualTo(-confirmed);
+        }
+    }
+
+    /**
+     * Bind the reservation to a simulated transaction, then commit or roll it back
+     *
+     * @return Whether the transaction committed
+     */
+    private boolean completeInTransaction(InventoryReservationService.Reservation reservation, boolean commit) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            boolean committed = commit;
+            try {
+                service.completeWithTransaction(reservation);
+            } catch (IllegalArgumentException e) {
+                // Expired before binding and the stock is gone: the order rolls back
+                committed = false;
+            }
+            int status = committed ? TransactionSynchronization.STATUS_COMMITTED
+                    : TransactionSynchronization.STATUS_ROLLED_BACK;
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(status));
+            return committed;
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private boolean confirm(InventoryReservationService.Reservation reservation) {
+        try {
+            service.confirm(reservation);
+            return true;
+        } catch (IllegalStateException e) {
+            // Expired and the stock has been reserved by others
+            return false;
+        }
+    }
+}
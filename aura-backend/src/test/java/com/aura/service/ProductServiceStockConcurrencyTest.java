@@ -0,0 +1,116 @@
+package com.aura.service;
+
+import com.aura.model.entity.Product;
+import com.aura.repository.ProductRepository;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.aura.service.ConcurrentTestSupport.runConcurrently;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 库存条件更新并发测试：多个线程同时扣减同一个热门产品，库存不能为负，成功次数等于初始库存
+ */
+class ProductServiceStockConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 50;
+    private static final int INITIAL_STOCK = 300;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:stock-" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // Stands in for @Transactional, which needs the Spring proxy
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("CREATE TABLE products (id VARCHAR(50) PRIMARY KEY, name VARCHAR(200) NOT NULL, "
+                + "stock INT DEFAULT 0, updated_at TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO products (id, name, stock) VALUES ('p1', 'Aura Harmony', ?)", INITIAL_STOCK);
+        jdbcTemplate.update("INSERT INTO products (id, name, stock) VALUES ('p2', 'Aura Flow', ?)", INITIAL_STOCK);
+
+        // Only used to explain a failed update (insufficient stock vs. missing product)
+        ProductRepository productRepository = mock(ProductRepository.class);
+        when(productRepository.findById(anyString())).thenAnswer(invocation -> {
+            Product product = new Product();
+            product.setId(invocation.getArgument(0));
+            product.setName(invocation.getArgument(0));
+            product.setStock(stock(invocation.getArgument(0)));
+            return Optional.of(product);
+        });
+
+        productService = new ProductService(productRepository, mock(ProductCatalog.class),
+                mock(ProductSearchIndex.class), mock(ProductEmbeddingIndex.class),
+                mock(ApplicationEventPublisher.class), jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    void concurrentDecrementsOfHotProductNeverOversell() throws Exception {
+        AtomicInteger successes = new AtomicInteger();
+        AtomicInteger rejections = new AtomicInteger();
+
+        runConcurrently(THREADS, () -> {
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                try {
+                    productService.updateStock("p1", -1);
+                    successes.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    rejections.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(stock("p1")).isZero();
+        assertThat(successes.get()).isEqualTo(INITIAL_STOCK);
+        assertThat(rejections.get()).isEqualTo(THREADS * ATTEMPTS_PER_THREAD - INITIAL_STOCK);
+    }
+
+    @Test
+    void concurrentMultiProductOrdersNeverOversell() throws Exception {
+        AtomicInteger successes = new AtomicInteger();
+
+        runConcurrently(THREADS, () -> {
+            for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                try {
+                    transactionTemplate.executeWithoutResult(
+                            status -> productService.decrementStock(Map.of("p1", 2, "p2", 1)));
+                    successes.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    // Insufficient stock: expected once p1 runs out
+                }
+            }
+        });
+
+        // A rejected order rolls back the lines already deducted
+        assertThat(successes.get()).isEqualTo(INITIAL_STOCK / 2);
+        assertThat(stock("p1")).isZero();
+        assertThat(stock("p2")).isEqualTo(INITIAL_STOCK - INITIAL_STOCK / 2);
+    }
+
+    private int stock(String productId) {
+        return jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, productId);
+    }
+}